@@ -0,0 +1,69 @@
+package benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import metrics.PipelineMetrics;
+import ocr.BarcodeScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link BarcodeScanner#scanBarcode(BufferedImage)} on images that
+ * contain a barcode (hit) and on plain text labels (miss).
+ * <p>
+ * The miss case matters as much as the hit: every OCR lookup pays for a
+ * failed barcode scan first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BarcodeBenchmark {
+
+    @Param({"EAN_13", "UPC_A"})
+    public String format;
+
+    @Param({"640x480", "1280x960", "3000x2250"})
+    public String resolution;
+
+    private BufferedImage barcodeImage;
+    private BufferedImage labelImage;
+
+    @Setup
+    public void setup() {
+        // Measure the scan alone, not the barcode.scan timer around it
+        PipelineMetrics.setEnabled(false);
+        int[] size = SyntheticImages.parseResolution(resolution);
+        BarcodeFormat barcodeFormat = BarcodeFormat.valueOf(format);
+        String contents = barcodeFormat == BarcodeFormat.UPC_A ? "19425346793" : "019425346793";
+        barcodeImage = SyntheticImages.barcode(barcodeFormat, contents, size[0], size[1]);
+        labelImage = SyntheticImages.textLabel(size[0], size[1]);
+
+        if (BarcodeScanner.scanBarcode(barcodeImage) == null) {
+            throw new IllegalStateException("Synthetic " + format + " barcode at " + resolution + " does not decode");
+        }
+    }
+
+    @Benchmark
+    public String decodeHit() {
+        return BarcodeScanner.scanBarcode(barcodeImage);
+    }
+
+    @Benchmark
+    public String decodeMiss() {
+        return BarcodeScanner.scanBarcode(labelImage);
+    }
+}
@@ -0,0 +1,37 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}.
+ * <p>
+ * Runs all benchmarks with the GC profiler attached so that allocation rate
+ * per operation is reported next to the timings. Any standard JMH command
+ * line option (e.g. a benchmark regex, {@code -p resolution=1280x960}) is
+ * accepted and overrides the defaults.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH command-line options
+     * @throws Exception if the options are invalid or a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmd);
+        if (cmd.getIncludes().isEmpty()) {
+            builder.include("benchmark\\..*Benchmark");
+        }
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
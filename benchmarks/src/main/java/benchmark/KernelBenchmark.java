@@ -0,0 +1,166 @@
+package benchmark;
+
+import metrics.PipelineMetrics;
+import ocr.GrayKernels;
+import ocr.ImagePreprocessor;
+import ocr.ScalarGrayKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and Vector API {@link GrayKernels} stage by stage. The
+ * vector runs need product-ocr installed with {@code -Pvector}.
+ * <p>
+ * Before measuring, {@link #setup()} runs every kernel of the selected
+ * implementation against {@link ScalarGrayKernels} on the benchmark image and
+ * on random noise, and fails the run unless the outputs are bit-identical.
+ * Resolutions are deliberately not multiples of any vector length so the
+ * scalar tails are exercised too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+
+    @Param({"scalar", "vector"})
+    public String impl;
+
+    @Param({"241x181", "1283x963", "3001x2251"})
+    public String resolution;
+
+    private GrayKernels kernels;
+    private BufferedImage rgbImage;
+    private int width;
+    private int height;
+    private int[] rgb;
+    private byte[] gray;
+    private byte[] denoised;
+    private byte[] contrasted;
+    private byte[] binary;
+    private byte[] out;
+
+    @Setup
+    public void setup() {
+        // fullChain times its stages through PipelineMetrics; leave that cost out
+        PipelineMetrics.setEnabled(false);
+        if (impl.equals("vector")) {
+            kernels = GrayKernels.best();
+            if (kernels instanceof ScalarGrayKernels) {
+                throw new IllegalStateException("Vector kernels not available: install product-ocr with -Pvector");
+            }
+        } else {
+            kernels = new ScalarGrayKernels();
+        }
+
+        int[] size = SyntheticImages.parseResolution(resolution);
+        width = size[0];
+        height = size[1];
+        rgbImage = SyntheticImages.textLabel(width, height);
+        rgb = rgbImage.getRGB(0, 0, width, height, null, 0, width);
+
+        verify(rgb);
+        int[] noise = new int[rgb.length];
+        Random random = new Random(42);
+        for (int i = 0; i < noise.length; i++) noise[i] = random.nextInt();
+        verify(noise);
+
+        ScalarGrayKernels ref = new ScalarGrayKernels();
+        gray = new byte[rgb.length];
+        denoised = new byte[rgb.length];
+        contrasted = new byte[rgb.length];
+        binary = new byte[rgb.length];
+        out = new byte[rgb.length];
+        ref.rgbToGray(rgb, gray);
+        ref.convolve3x3(gray, denoised, width, height, GrayKernels.BLUR_WEIGHTS,
+                GrayKernels.BLUR_MULTIPLIER, GrayKernels.BLUR_SHIFT);
+        int[] range = ref.minMax(denoised);
+        ref.stretch(denoised, contrasted, range[0], range[1]);
+        ref.threshold(contrasted, binary);
+    }
+
+    /**
+     * Runs the whole chain with both implementations and throws on the first
+     * stage whose output differs.
+     */
+    private void verify(int[] input) {
+        GrayKernels ref = new ScalarGrayKernels();
+        int n = input.length;
+        byte[][] expected = new byte[5][n];
+        byte[][] actual = new byte[5][n];
+        for (GrayKernels k : new GrayKernels[]{ref, kernels}) {
+            byte[][] s = k == ref ? expected : actual;
+            k.rgbToGray(input, s[0]);
+            k.convolve3x3(s[0], s[1], width, height, GrayKernels.BLUR_WEIGHTS,
+                    GrayKernels.BLUR_MULTIPLIER, GrayKernels.BLUR_SHIFT);
+            int[] r = k.minMax(s[1]);
+            k.stretch(s[1], s[2], r[0], r[1]);
+            k.threshold(s[2], s[3]);
+            k.convolve3x3(s[3], s[4], width, height, GrayKernels.SHARPEN_WEIGHTS, 1, 0);
+        }
+        if (!Arrays.equals(ref.minMax(expected[1]), kernels.minMax(expected[1]))) {
+            throw new IllegalStateException(kernels.name() + " minMax differs from scalar");
+        }
+        String[] stages = {"rgbToGray", "blur", "stretch", "threshold", "sharpen"};
+        for (int i = 0; i < stages.length; i++) {
+            int at = Arrays.mismatch(expected[i], actual[i]);
+            if (at >= 0) {
+                throw new IllegalStateException(kernels.name() + " " + stages[i]
+                        + " differs from scalar at pixel " + at);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] grayscale() {
+        kernels.rgbToGray(rgb, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] blur() {
+        kernels.convolve3x3(gray, out, width, height, GrayKernels.BLUR_WEIGHTS,
+                GrayKernels.BLUR_MULTIPLIER, GrayKernels.BLUR_SHIFT);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] contrastStretch() {
+        int[] r = kernels.minMax(denoised);
+        kernels.stretch(denoised, out, r[0], r[1]);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] threshold() {
+        kernels.threshold(contrasted, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] sharpen() {
+        kernels.convolve3x3(binary, out, width, height, GrayKernels.SHARPEN_WEIGHTS, 1, 0);
+        return out;
+    }
+
+    @Benchmark
+    public BufferedImage fullChain() {
+        return ImagePreprocessor.preprocessForOCR(rgbImage, kernels);
+    }
+}
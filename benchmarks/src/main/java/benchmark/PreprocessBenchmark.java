@@ -0,0 +1,91 @@
+package benchmark;
+
+import metrics.PipelineMetrics;
+import ocr.ImagePreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every stage of {@link ImagePreprocessor} in isolation, plus the
+ * whole chain as run before Tesseract.
+ * <p>
+ * Each stage is fed the output of the previous stage, prepared once in
+ * {@link #setup()}, so the numbers match what the stage sees in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PreprocessBenchmark {
+
+    /** Input resolutions; the smallest one triggers the 2x upscale path */
+    @Param({"240x180", "1280x960", "3000x2250"})
+    public String resolution;
+
+    private BufferedImage rgb;
+    private BufferedImage gray;
+    private BufferedImage denoised;
+    private BufferedImage contrasted;
+    private BufferedImage binary;
+
+    @Setup
+    public void setup() {
+        // fullChain would otherwise also measure the per-stage timers and JFR events
+        PipelineMetrics.setEnabled(false);
+        int[] size = SyntheticImages.parseResolution(resolution);
+        rgb = SyntheticImages.textLabel(size[0], size[1]);
+        gray = ImagePreprocessor.toGrayscale(rgb);
+        denoised = ImagePreprocessor.medianBlur(gray);
+        contrasted = ImagePreprocessor.contrastStretch(denoised);
+        binary = ImagePreprocessor.adaptiveThreshold(contrasted);
+    }
+
+    @Benchmark
+    public BufferedImage grayscale() {
+        return ImagePreprocessor.toGrayscale(rgb);
+    }
+
+    @Benchmark
+    public BufferedImage upscale() {
+        return ImagePreprocessor.scaleImage(gray, 2.0);
+    }
+
+    @Benchmark
+    public BufferedImage medianBlur() {
+        return ImagePreprocessor.medianBlur(gray);
+    }
+
+    @Benchmark
+    public BufferedImage contrastStretch() {
+        return ImagePreprocessor.contrastStretch(denoised);
+    }
+
+    @Benchmark
+    public BufferedImage adaptiveThreshold() {
+        return ImagePreprocessor.adaptiveThreshold(contrasted);
+    }
+
+    @Benchmark
+    public BufferedImage sharpen() {
+        return ImagePreprocessor.sharpenImage(binary);
+    }
+
+    @Benchmark
+    public BufferedImage fullChain() {
+        return ImagePreprocessor.preprocessForOCR(rgb);
+    }
+}
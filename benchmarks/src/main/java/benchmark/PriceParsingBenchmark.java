@@ -0,0 +1,91 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pricing.StoreResult;
+import product.ProductIdentifier;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the price selection helpers in {@link ProductIdentifier}:
+ * parsing scraped price strings, picking the best store, and parsing the
+ * JSON returned by the {@code /products} endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceParsingBenchmark {
+
+    /** Price strings as the store fetchers actually return them */
+    private static final String[] SCRAPED_PRICES = {
+            "329", "$329.00", "CA$ 1,299.99", "USD 249.00", "1.299.00",
+            "Error: Expected condition failed: waiting for visibility of element"
+    };
+
+    /** Number of products in the simulated DB response */
+    @Param({"1", "10", "100"})
+    public int products;
+
+    private Map<String, StoreResult> storeResults;
+    private String dbResponse;
+
+    @Setup
+    public void setup() {
+        storeResults = new LinkedHashMap<>();
+        storeResults.put("Amazon", new StoreResult("329", "https://www.amazon.ca/s?k=airpods"));
+        storeResults.put("Adkomsal", new StoreResult("$319.00", "https://adkomsal.com/product/airpods"));
+        storeResults.put("Apple Store", new StoreResult("Error: timeout", "https://www.apple.com/us/search/airpods"));
+        storeResults.put("iStyle", new StoreResult("USD 299.00", "https://istyle.com.lb/products/airpods"));
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < products; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"id\":\"65f1c0ffee").append(String.format("%014d", i)).append('"')
+                    .append(",\"title\":\"Apple AirPods Pro ").append(i).append('"')
+                    .append(",\"description\":\"\"")
+                    .append(",\"price\":").append(200 + (i * 37) % 150).append(".99")
+                    .append(",\"sourceUrl\":\"https://adkomsal.com/product/").append(i).append('"')
+                    .append(",\"timestamp\":\"2024-05-01T12:00:00\"}");
+        }
+        dbResponse = json.append(']').toString();
+    }
+
+    @Benchmark
+    public void parsePrice(Blackhole bh) {
+        for (String price : SCRAPED_PRICES) {
+            bh.consume(ProductIdentifier.parsePrice(price));
+        }
+    }
+
+    @Benchmark
+    public Map.Entry<String, StoreResult> findBestEntry() {
+        return ProductIdentifier.findBestEntry(storeResults);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> parseDbResponse() throws Exception {
+        return ProductIdentifier.parseProducts(dbResponse);
+    }
+
+    @Benchmark
+    public String bestPriceFromDb() {
+        return ProductIdentifier.getBestPriceFromDB(dbResponse);
+    }
+}
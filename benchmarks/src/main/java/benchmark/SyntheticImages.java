@@ -0,0 +1,134 @@
+package benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic generator for the synthetic images used by the benchmarks.
+ * <p>
+ * Every image is derived only from its arguments and a fixed seed, so two runs
+ * on the same machine measure exactly the same pixels.
+ */
+public final class SyntheticImages {
+
+    /** Seed used for the background noise of every generated image */
+    private static final long SEED = 0x5EEDL;
+
+    /** Sample product label lines, similar to what staff photograph */
+    private static final String[] LABEL_LINES = {
+            "Apple AirPods Pro (2nd generation)",
+            "MagSafe Charging Case USB-C",
+            "Model A2968  SKU MTJV3AM/A",
+            "Made in Vietnam  CAD 329.00"
+    };
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * Parses a resolution parameter of the form {@code WIDTHxHEIGHT}.
+     *
+     * @param resolution resolution string, e.g. {@code 1280x960}
+     * @return two element array holding width and height
+     */
+    public static int[] parseResolution(String resolution) {
+        String[] parts = resolution.toLowerCase().split("x");
+        return new int[]{Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())};
+    }
+
+    /**
+     * Renders a colour product label with a few lines of dark text on a lightly
+     * noisy background.
+     *
+     * @param width  image width in pixels
+     * @param height image height in pixels
+     * @return RGB label image
+     */
+    public static BufferedImage textLabel(int width, int height) {
+        BufferedImage img = noisyBackground(width, height, new Color(236, 230, 218), 12);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(new Color(30, 30, 40));
+
+        int lineHeight = height / (LABEL_LINES.length + 1);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(8, lineHeight * 2 / 3)));
+        FontMetrics fm = g.getFontMetrics();
+        int y = lineHeight;
+        for (String line : LABEL_LINES) {
+            int x = Math.max(0, (width - fm.stringWidth(line)) / 2);
+            g.drawString(line, x, y);
+            y += lineHeight;
+        }
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Renders a 1D barcode centred on a noisy background, as if photographed
+     * on a product box.
+     *
+     * @param format   barcode format, e.g. {@link BarcodeFormat#EAN_13}
+     * @param contents digits to encode
+     * @param width    image width in pixels
+     * @param height   image height in pixels
+     * @return RGB barcode image
+     */
+    public static BufferedImage barcode(BarcodeFormat format, String contents, int width, int height) {
+        BufferedImage img = noisyBackground(width, height, Color.WHITE, 8);
+        int codeWidth = width * 3 / 4;
+        int codeHeight = height / 2;
+        try {
+            BitMatrix matrix = new MultiFormatWriter().encode(contents, format, codeWidth, codeHeight,
+                    Map.of(EncodeHintType.MARGIN, 10));
+            BufferedImage code = MatrixToImageWriter.toBufferedImage(matrix);
+            Graphics2D g = img.createGraphics();
+            g.drawImage(code, (width - code.getWidth()) / 2, (height - code.getHeight()) / 2, null);
+            g.dispose();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not encode " + format + " barcode: " + contents, e);
+        }
+        return img;
+    }
+
+    /**
+     * Fills an RGB image with a base colour plus seeded per-pixel noise.
+     *
+     * @param width     image width in pixels
+     * @param height    image height in pixels
+     * @param base      background colour
+     * @param amplitude maximum noise added to or removed from each channel
+     * @return noisy RGB image
+     */
+    private static BufferedImage noisyBackground(int width, int height, Color base, int amplitude) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SEED);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int n = random.nextInt(2 * amplitude + 1) - amplitude;
+                int r = clamp(base.getRed() + n);
+                int gr = clamp(base.getGreen() + n);
+                int b = clamp(base.getBlue() + n);
+                row[x] = (r << 16) | (gr << 8) | b;
+            }
+            img.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return img;
+    }
+
+    private static int clamp(int v) {
+        return Math.min(255, Math.max(0, v));
+    }
+}
@@ -0,0 +1,133 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for the PriceCacheAPI {@code /products} REST endpoints.
+ * <p>
+ * Supports the same routes as the Spring Boot service, including the
+ * {@code ?name=} filter used by the lookup, so {@code ProductIdentifier} can
+ * run against it unchanged. Products are kept in insertion order.
+ */
+public class FakeProductApi extends HttpStandIn {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, Map<String, Object>> products = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Creates the server; call {@link #start()} to serve.
+     *
+     * @param port   port to bind, or 0 for any free port
+     * @param faults latency and failures to inject
+     * @throws IOException if the port cannot be bound
+     */
+    public FakeProductApi(int port, FaultProfile faults) throws IOException {
+        super(port, faults);
+    }
+
+    /**
+     * Adds a product directly, bypassing HTTP.
+     *
+     * @param title     product title as it will be searched for
+     * @param price     stored best price
+     * @param sourceUrl store page the price came from
+     * @return id of the new product
+     */
+    public String seed(String title, double price, String sourceUrl) {
+        Map<String, Object> product = new LinkedHashMap<>();
+        product.put("title", title);
+        product.put("description", "");
+        product.put("price", price);
+        product.put("sourceUrl", sourceUrl);
+        return insert(product);
+    }
+
+    /**
+     * Number of stored products.
+     *
+     * @return product count
+     */
+    public int size() {
+        return products.size();
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange, FaultProfile.Outcome outcome) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        if (path.endsWith("/") && path.length() > 1) path = path.substring(0, path.length() - 1);
+
+        if (path.equals("/products")) {
+            if (method.equals("GET")) {
+                String name = queryParams(exchange).get("name");
+                List<Map<String, Object>> result = new ArrayList<>();
+                for (Map<String, Object> p : products.values()) {
+                    if (name == null || name.equalsIgnoreCase(String.valueOf(p.get("title")))) result.add(p);
+                }
+                sendJson(exchange, 200, result);
+            } else if (method.equals("POST")) {
+                Map<String, Object> product = readProduct(exchange);
+                insert(product);
+                sendJson(exchange, 201, product);
+            } else {
+                send(exchange, 405, "text/plain", "");
+            }
+        } else if (path.startsWith("/products/older-than/") && method.equals("DELETE")) {
+            LocalDateTime cutoff = LocalDateTime.parse(decode(path.substring("/products/older-than/".length())));
+            products.values().removeIf(p -> LocalDateTime.parse(p.get("timestamp").toString()).isBefore(cutoff));
+            send(exchange, 204, "text/plain", "");
+        } else if (path.startsWith("/products/")) {
+            String id = decode(path.substring("/products/".length()));
+            Map<String, Object> existing = products.get(id);
+            if (existing == null) {
+                send(exchange, 404, "text/plain", "");
+            } else if (method.equals("GET")) {
+                sendJson(exchange, 200, existing);
+            } else if (method.equals("PUT")) {
+                Map<String, Object> product = readProduct(exchange);
+                product.put("id", id);
+                product.put("timestamp", LocalDateTime.now().toString());
+                products.put(id, product);
+                sendJson(exchange, 200, product);
+            } else if (method.equals("DELETE")) {
+                products.remove(id);
+                send(exchange, 204, "text/plain", "");
+            } else {
+                send(exchange, 405, "text/plain", "");
+            }
+        } else {
+            send(exchange, 404, "text/plain", "");
+        }
+    }
+
+    private String insert(Map<String, Object> product) {
+        String id = String.format("%024x", nextId.getAndIncrement());
+        product.put("id", id);
+        product.put("timestamp", LocalDateTime.now().toString());
+        products.put(id, product);
+        return id;
+    }
+
+    private static Map<String, Object> readProduct(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = mapper.readValue(exchange.getRequestBody(),
+                mapper.getTypeFactory().constructMapType(LinkedHashMap.class, String.class, Object.class));
+        body.remove("id");
+        return body;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object value) throws IOException {
+        send(exchange, status, "application/json", mapper.writeValueAsString(value));
+    }
+}
@@ -0,0 +1,95 @@
+package loadtest;
+
+import java.util.Random;
+
+/**
+ * Latency and failure behaviour injected by the local stand-in servers.
+ * <p>
+ * Every request is delayed by {@code latencyMs} plus a uniform random jitter
+ * of up to {@code jitterMs}, then fails with HTTP 503 with probability
+ * {@code errorRate}, or (for store pages) returns a page without results with
+ * probability {@code emptyRate}. The random sequence is seeded, so a run with
+ * the same workload injects the same faults.
+ */
+public class FaultProfile {
+
+    /** No added latency and no failures */
+    public static final FaultProfile NONE = new FaultProfile(0, 0, 0, 0);
+
+    /** Outcome chosen for a single request */
+    public enum Outcome { OK, ERROR, EMPTY }
+
+    public final long latencyMs;
+    public final long jitterMs;
+    public final double errorRate;
+    public final double emptyRate;
+
+    private final Random random = new Random(42);
+
+    /**
+     * Constructs a new FaultProfile.
+     *
+     * @param latencyMs fixed delay added to every request
+     * @param jitterMs  maximum random delay added on top of latencyMs
+     * @param errorRate probability of answering HTTP 503
+     * @param emptyRate probability of answering a page with no results
+     */
+    public FaultProfile(long latencyMs, long jitterMs, double errorRate, double emptyRate) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.errorRate = errorRate;
+        this.emptyRate = emptyRate;
+    }
+
+    /**
+     * Parses a profile from a spec such as {@code latency=80,jitter=40,errors=0.05,empty=0.02}.
+     * Omitted keys default to zero.
+     *
+     * @param spec comma-separated key=value pairs
+     * @return parsed profile
+     * @throws IllegalArgumentException if a key is unknown or a value is malformed
+     */
+    public static FaultProfile parse(String spec) {
+        long latency = 0, jitter = 0;
+        double errors = 0, empty = 0;
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) continue;
+            String[] kv = part.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("Expected key=value but got: " + part);
+            String value = kv[1].trim();
+            switch (kv[0].trim()) {
+                case "latency": latency = Long.parseLong(value); break;
+                case "jitter": jitter = Long.parseLong(value); break;
+                case "errors": errors = Double.parseDouble(value); break;
+                case "empty": empty = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("Unknown fault key: " + kv[0]);
+            }
+        }
+        return new FaultProfile(latency, jitter, errors, empty);
+    }
+
+    /**
+     * Sleeps for the configured latency and picks the outcome of one request.
+     *
+     * @return outcome the server should answer with
+     * @throws InterruptedException if interrupted while sleeping
+     */
+    public Outcome apply() throws InterruptedException {
+        long delay = latencyMs;
+        double roll;
+        synchronized (random) {
+            if (jitterMs > 0) delay += (long) (random.nextDouble() * jitterMs);
+            roll = random.nextDouble();
+        }
+        if (delay > 0) Thread.sleep(delay);
+
+        if (roll < errorRate) return Outcome.ERROR;
+        if (roll < errorRate + emptyRate) return Outcome.EMPTY;
+        return Outcome.OK;
+    }
+
+    @Override
+    public String toString() {
+        return "latency=" + latencyMs + ",jitter=" + jitterMs + ",errors=" + errorRate + ",empty=" + emptyRate;
+    }
+}
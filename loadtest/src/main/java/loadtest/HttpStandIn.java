@@ -0,0 +1,141 @@
+package loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Common plumbing of the embedded HTTP stand-ins: server lifecycle on
+ * localhost, fault injection and response helpers.
+ */
+abstract class HttpStandIn implements AutoCloseable {
+
+    protected final FaultProfile faults;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates the server bound to localhost; call {@link #start()} to serve.
+     *
+     * @param port   port to bind, or 0 for any free port
+     * @param faults latency and failures to inject
+     * @throws IOException if the port cannot be bound
+     */
+    protected HttpStandIn(int port, FaultProfile faults) throws IOException {
+        this.faults = faults;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, getClass().getSimpleName());
+            t.setDaemon(true);
+            return t;
+        });
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::dispatch);
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Base URL of the server, without trailing slash.
+     *
+     * @return e.g. {@code http://127.0.0.1:51234}
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Handles a request once the injected latency has elapsed.
+     *
+     * @param exchange the request
+     * @param outcome  outcome picked by the fault profile, never ERROR
+     * @throws IOException if writing the response fails
+     */
+    protected abstract void handle(HttpExchange exchange, FaultProfile.Outcome outcome) throws IOException;
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            FaultProfile.Outcome outcome = faults.apply();
+            if (outcome == FaultProfile.Outcome.ERROR) {
+                send(exchange, 503, "text/html", "<html><body><h1>503 Service Unavailable</h1></body></html>");
+                return;
+            }
+            handle(exchange, outcome);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            send(exchange, 500, "text/plain", String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Writes a complete response.
+     *
+     * @param exchange    the request
+     * @param status      HTTP status code
+     * @param contentType response content type
+     * @param body        response body, may be empty
+     * @throws IOException if writing fails
+     */
+    protected static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Decodes the query string of a request.
+     *
+     * @param exchange the request
+     * @return query parameters; repeated keys keep the last value
+     */
+    protected static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) continue;
+            String[] kv = pair.split("=", 2);
+            params.put(decode(kv[0]), kv.length > 1 ? decode(kv[1]) : "");
+        }
+        return params;
+    }
+
+    /**
+     * URL-decodes a path segment or query component.
+     *
+     * @param s encoded text
+     * @return decoded text
+     */
+    protected static String decode(String s) {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+}
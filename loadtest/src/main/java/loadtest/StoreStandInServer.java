@@ -0,0 +1,142 @@
+package loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import pricing.PriceFetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local stand-in for the store sites scraped by {@link PriceFetcher}.
+ * <p>
+ * Serves recorded search and product pages that carry the same CSS selectors
+ * the fetchers wait for. Each store lives under its own path prefix, so
+ * {@link #baseUrls()} can be passed straight to
+ * {@link PriceFetcher#PriceFetcher(Map, java.util.function.Supplier, java.time.Duration)}.
+ * <p>
+ * Pages are HTML templates with {@code {{query}}}, {@code {{price}}},
+ * {@code {{priceWhole}}}, {@code {{priceFraction}}} and {@code {{productUrl}}}
+ * placeholders. The built-in templates can be replaced by real recorded pages
+ * placed in a directory with the same file names.
+ */
+public class StoreStandInServer extends HttpStandIn {
+
+    private static final String NO_RESULTS =
+            "<!DOCTYPE html><html><body><p>No results for your search.</p></body></html>";
+
+    /** Path prefix of each store on this server */
+    private static final Map<String, String> PREFIXES = Map.of(
+            PriceFetcher.AMAZON, "/amazon",
+            PriceFetcher.ADKOMSAL, "/adkomsal",
+            PriceFetcher.APPLE_STORE, "/apple",
+            PriceFetcher.ISTYLE, "/istyle");
+
+    private final Path pagesDir;
+    private final Map<String, String> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the server; call {@link #start()} to serve.
+     *
+     * @param port     port to bind, or 0 for any free port
+     * @param faults   latency and failures to inject
+     * @param pagesDir directory of recorded page templates, or null for the built-in ones
+     * @throws IOException if the port cannot be bound
+     */
+    public StoreStandInServer(int port, FaultProfile faults, Path pagesDir) throws IOException {
+        super(port, faults);
+        this.pagesDir = pagesDir;
+    }
+
+    /**
+     * Base URL of every store on this server.
+     *
+     * @return map of store name to base URL
+     */
+    public Map<String, String> baseUrls() {
+        Map<String, String> urls = new HashMap<>();
+        PREFIXES.forEach((store, prefix) -> urls.put(store, baseUrl() + prefix));
+        return urls;
+    }
+
+    /**
+     * Deterministic price a store quotes for a query, so repeated runs scrape
+     * the same numbers and stores disagree the same way each time.
+     *
+     * @param store store name
+     * @param query search text
+     * @return price between 50 and about 1600
+     */
+    public static double priceFor(String store, String query) {
+        int h = (store + '|' + query.trim().toLowerCase(Locale.ROOT)).hashCode() & 0x7fffffff;
+        return 50 + (h % 155000) / 100.0;
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange, FaultProfile.Outcome outcome) throws IOException {
+        String path = exchange.getRequestURI().getRawPath();
+        Map<String, String> params = queryParams(exchange);
+        boolean empty = outcome == FaultProfile.Outcome.EMPTY;
+
+        if (path.equals("/amazon/s") && params.containsKey("k")) {
+            sendPage(exchange, PriceFetcher.AMAZON, "amazon-search.html", params.get("k"), empty);
+        } else if (path.equals("/adkomsal/") && params.containsKey("s")) {
+            sendPage(exchange, PriceFetcher.ADKOMSAL, "adkomsal-search.html", params.get("s"), empty);
+        } else if (path.startsWith("/adkomsal/product/")) {
+            String query = decode(path.substring("/adkomsal/product/".length()));
+            sendPage(exchange, PriceFetcher.ADKOMSAL, "adkomsal-product.html", query, false);
+        } else if (path.startsWith("/apple/us/search/")) {
+            String query = decode(path.substring("/apple/us/search/".length()));
+            sendPage(exchange, PriceFetcher.APPLE_STORE, "apple-search.html", query, empty);
+        } else if (path.equals("/istyle/search") && params.containsKey("q")) {
+            sendPage(exchange, PriceFetcher.ISTYLE, "istyle-search.html", params.get("q"), empty);
+        } else {
+            send(exchange, 404, "text/html", "<html><body><h1>404 Not Found</h1></body></html>");
+        }
+    }
+
+    private void sendPage(HttpExchange exchange, String store, String template, String query, boolean empty)
+            throws IOException {
+        if (empty) {
+            send(exchange, 200, "text/html", NO_RESULTS);
+            return;
+        }
+        double price = priceFor(store, query);
+        String formatted = String.format(Locale.ROOT, "%,.2f", price);
+        String html = template(template)
+                .replace("{{query}}", escapeHtml(query))
+                .replace("{{price}}", formatted)
+                .replace("{{priceWhole}}", formatted.substring(0, formatted.indexOf('.')))
+                .replace("{{priceFraction}}", formatted.substring(formatted.indexOf('.') + 1))
+                .replace("{{productUrl}}", baseUrl() + PREFIXES.get(PriceFetcher.ADKOMSAL) + "/product/"
+                        + URLEncoder.encode(query, StandardCharsets.UTF_8).replace("+", "%20"));
+        send(exchange, 200, "text/html", html);
+    }
+
+    private String template(String name) {
+        return templates.computeIfAbsent(name, n -> {
+            try {
+                if (pagesDir != null && Files.isRegularFile(pagesDir.resolve(n))) {
+                    return Files.readString(pagesDir.resolve(n));
+                }
+                try (InputStream in = StoreStandInServer.class.getResourceAsStream("/pages/" + n)) {
+                    if (in == null) throw new IllegalStateException("Missing page template: " + n);
+                    return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read page template: " + n, e);
+            }
+        });
+    }
+
+    private static String escapeHtml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,341 @@
+package loadtest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import metrics.PipelineMetrics;
+import ocr.IdentificationCache;
+import ocr.ImageIdentifier;
+import ocr.OCRService;
+import ocr.TesseractOCRService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import pricing.PriceFetcher;
+import product.ProductIdentifier;
+import product.WriteBehindQueue;
+import product.WriteJournal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays a mix of image identifications against local stand-ins of the store
+ * sites and PriceCacheAPI, at a fixed arrival rate, and reports throughput and
+ * latency percentiles.
+ * <p>
+ * Each operation is what the CLI does for one photo: optional perceptual-hash
+ * reuse, barcode scan, optional OCR fallback, then either {@link ProductIdentifier#runProductLookup(String)}
+ * or {@link ProductIdentifier#runProductLookupToEditPrice(String)}. Arrivals
+ * are scheduled open-loop, so latency is measured from when an operation was
+ * due rather than when a worker picked it up; a saturated pipeline shows up as
+ * growing latency instead of a silently lower rate.
+ * <p>
+ * Scraping still goes through Selenium, so a local Chrome (or Chromium) and
+ * chromedriver are required for lookups that miss the database.
+ */
+public class WorkloadDriver {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -jar loadtest.jar [options]",
+            "  -images <dir>        replay .png/.jpg photos from dir (default: generated EAN-13 labels)",
+            "  -products <n>        number of generated products (default 40)",
+            "  -seedRatio <0..1>    share of generated products already in the DB (default 0.5)",
+            "  -editRatio <0..1>    share of operations that run the edit-price flow (default 0.1)",
+            "  -rate <ops/s>        target arrival rate (default 2)",
+            "  -duration <s>        length of the measured run (default 60)",
+            "  -threads <n>         concurrent identifications (default 4)",
+            "  -storeFaults <spec>  store page faults, e.g. latency=300,jitter=200,errors=0.05,empty=0.05",
+            "  -apiFaults <spec>    PriceCacheAPI faults, same format",
+            "  -pages <dir>         recorded store page templates overriding the built-in ones",
+            "  -scrapeTimeout <s>   WebDriver wait per store (default 3)",
+            "  -chromeBinary <path> browser binary used for scraping",
+            "  -ocr                 fall back to Tesseract when no barcode is found",
+            "  -ocrCascade <conf>   with -ocr, try the fast OCR pass first and accept it at this confidence",
+            "  -journal <file>      send DB writes through the write-behind journal at this path",
+            "  -hashRadius <bits>   reuse identifications of images within this dHash distance",
+            "  -hashOcrRadius <bits> with -hashRadius, dHash distance for reusing OCR identifications (default 1)",
+            "  -hashNoVerify        with -hashRadius, reuse without confirming by barcode scan (unsafe)",
+            "  -verbose             keep the per-lookup console output");
+
+    private Path imagesDir;
+    private int productCount = 40;
+    private double seedRatio = 0.5;
+    private double editRatio = 0.1;
+    private double rate = 2;
+    private long durationSeconds = 60;
+    private int threads = 4;
+    private FaultProfile storeFaults = FaultProfile.NONE;
+    private FaultProfile apiFaults = FaultProfile.NONE;
+    private Path pagesDir;
+    private long scrapeTimeoutSeconds = 3;
+    private String chromeBinary;
+    private boolean ocrFallback;
+    private Float cascadeThreshold;
+    private Path journalPath;
+    private Integer hashRadius;
+    private Integer hashOcrRadius;
+    private boolean hashVerify = true;
+    private boolean verbose;
+
+    private final Histogram responseTime = new ConcurrentHistogram(3);
+    private final Histogram serviceTime = new ConcurrentHistogram(3);
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong unidentified = new AtomicLong();
+
+    /**
+     * Entry point of {@code loadtest.jar}.
+     *
+     * @param args command-line options, see {@code -help}
+     * @throws Exception if the stand-ins cannot start or the workload cannot be prepared
+     */
+    public static void main(String[] args) throws Exception {
+        WorkloadDriver driver = new WorkloadDriver();
+        if (!driver.parseArgs(args)) {
+            System.out.println(USAGE);
+            return;
+        }
+        driver.run();
+    }
+
+    private boolean parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-images": imagesDir = Paths.get(args[++i]); break;
+                case "-products": productCount = Integer.parseInt(args[++i]); break;
+                case "-seedRatio": seedRatio = Double.parseDouble(args[++i]); break;
+                case "-editRatio": editRatio = Double.parseDouble(args[++i]); break;
+                case "-rate": rate = Double.parseDouble(args[++i]); break;
+                case "-duration": durationSeconds = Long.parseLong(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-storeFaults": storeFaults = FaultProfile.parse(args[++i]); break;
+                case "-apiFaults": apiFaults = FaultProfile.parse(args[++i]); break;
+                case "-pages": pagesDir = Paths.get(args[++i]); break;
+                case "-scrapeTimeout": scrapeTimeoutSeconds = Long.parseLong(args[++i]); break;
+                case "-chromeBinary": chromeBinary = args[++i]; break;
+                case "-ocr": ocrFallback = true; break;
+                case "-ocrCascade": cascadeThreshold = Float.parseFloat(args[++i]); break;
+                case "-journal": journalPath = Paths.get(args[++i]); break;
+                case "-hashRadius": hashRadius = Integer.parseInt(args[++i]); break;
+                case "-hashOcrRadius": hashOcrRadius = Integer.parseInt(args[++i]); break;
+                case "-hashNoVerify": hashVerify = false; break;
+                case "-verbose": verbose = true; break;
+                default:
+                    if (!arg.equals("-help")) System.out.println("Unknown option: " + arg);
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private void run() throws Exception {
+        PrintStream console = System.out;
+        try (StoreStandInServer stores = new StoreStandInServer(0, storeFaults, pagesDir);
+             FakeProductApi api = new FakeProductApi(0, apiFaults)) {
+            stores.start();
+            api.start();
+
+            ProductIdentifier.setApiBase(api.baseUrl());
+            ProductIdentifier.setPriceFetcherFactory(() -> new PriceFetcher(
+                    stores.baseUrls(), this::newDriver, Duration.ofSeconds(scrapeTimeoutSeconds)));
+
+            List<Path> images = imagesDir != null ? listImages(imagesDir) : generateWorkload(api, stores);
+            if (images.isEmpty()) throw new IOException("No images to replay");
+
+            console.printf(Locale.ROOT, "Stores at %s, API at %s (%d products seeded)%n",
+                    stores.baseUrl(), api.baseUrl(), api.size());
+            console.printf(Locale.ROOT, "Replaying %d images at %.2f ops/s for %ds on %d threads%n",
+                    images.size(), rate, durationSeconds, threads);
+            console.println("Store faults: " + storeFaults + "  API faults: " + apiFaults);
+
+            WriteBehindQueue writes = journalPath == null ? null
+                    : new WriteBehindQueue(new WriteJournal(journalPath, WriteJournal.DEFAULT_CAPACITY, true), 16);
+            ProductIdentifier.setWriteBehind(writes);
+
+            if (!verbose) System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            long elapsedNanos;
+            try {
+                elapsedNanos = replay(images);
+            } finally {
+                System.setOut(console);
+                if (writes != null) {
+                    writes.close(Duration.ofSeconds(60));
+                    ProductIdentifier.setWriteBehind(null);
+                }
+            }
+            report(console, elapsedNanos, api);
+        }
+    }
+
+    /**
+     * Issues operations at the target rate until the duration is over, then
+     * waits for in-flight operations to finish.
+     *
+     * @param images photos to cycle through
+     * @return wall-clock time from the first arrival to the last completion
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IOException if the identification cache cannot be created
+     */
+    private long replay(List<Path> images) throws InterruptedException, IOException {
+        IdentificationCache cache = null;
+        if (hashRadius != null) {
+            Path file = Files.createTempFile("loadtest-identifications", ".tsv");
+            file.toFile().deleteOnExit();
+            cache = hashOcrRadius != null
+                    ? new IdentificationCache(file, hashRadius, hashOcrRadius, hashVerify)
+                    : new IdentificationCache(file, hashRadius, hashVerify);
+        }
+        ImageIdentifier identifier = new ImageIdentifier(newOcrService(), cache);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService arrivals = Executors.newSingleThreadScheduledExecutor();
+        Random mix = new Random(7);
+        AtomicLong issued = new AtomicLong();
+        long intervalNanos = (long) (1e9 / rate);
+        long total = (long) (rate * durationSeconds);
+        long start = System.nanoTime();
+
+        arrivals.scheduleAtFixedRate(() -> {
+            long n = issued.getAndIncrement();
+            if (n >= total) {
+                arrivals.shutdown();
+                return;
+            }
+            long due = start + n * intervalNanos;
+            Path image = images.get((int) (n % images.size()));
+            boolean edit = mix.nextDouble() < editRatio;
+            workers.execute(() -> identify(identifier, image, edit, due));
+        }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+
+        arrivals.awaitTermination(durationSeconds + 60, TimeUnit.SECONDS);
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        if (cache != null) cache.close();
+        return elapsed;
+    }
+
+    private OCRService newOcrService() {
+        if (!ocrFallback) return null;
+        return cascadeThreshold != null
+                ? new TesseractOCRService(cascadeThreshold, TesseractOCRService.DEFAULT_FAST_MAX_DIMENSION)
+                : new TesseractOCRService();
+    }
+
+    private void identify(ImageIdentifier identifier, Path image, boolean edit, long due) {
+        long begin = System.nanoTime();
+        try {
+            ImageIdentifier.Identification identification = identifier.identify(image.toString());
+            String text = identification == null ? null : identification.text;
+            if (text == null || text.isBlank()) {
+                unidentified.incrementAndGet();
+                return;
+            }
+            if (edit) {
+                ProductIdentifier.runProductLookupToEditPrice(text);
+            } else {
+                ProductIdentifier.runProductLookup(text);
+            }
+            succeeded.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+        } finally {
+            long end = System.nanoTime();
+            responseTime.recordValue(end - due);
+            serviceTime.recordValue(end - begin);
+        }
+    }
+
+    private void report(PrintStream out, long elapsedNanos, FakeProductApi api) {
+        long done = responseTime.getTotalCount();
+        double seconds = elapsedNanos / 1e9;
+        out.println();
+        out.println("----- LOAD TEST RESULTS -----");
+        out.printf(Locale.ROOT, "Operations: %d (ok %d, failed %d, unidentified %d) in %.1fs%n",
+                done, succeeded.get(), failed.get(), unidentified.get(), seconds);
+        out.printf(Locale.ROOT, "Throughput: %.2f ops/s (target %.2f)%n", done / seconds, rate);
+        printLatency(out, "Response time (from due time)", responseTime);
+        printLatency(out, "Service time  (from start)   ", serviceTime);
+        out.println("Products in API after run: " + api.size());
+        out.println();
+        out.print(PipelineMetrics.snapshot());
+    }
+
+    private static void printLatency(PrintStream out, String label, Histogram h) {
+        out.printf(Locale.ROOT, "%s ms: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n", label,
+                h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(90) / 1e6,
+                h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6, h.getMaxValue() / 1e6);
+    }
+
+    private WebDriver newDriver() {
+        ChromeOptions options = new ChromeOptions();
+        if (chromeBinary != null) options.setBinary(chromeBinary);
+        options.addArguments("--headless=new", "--disable-gpu", "--window-size=1200,800");
+        return new ChromeDriver(options);
+    }
+
+    private static List<Path> listImages(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT).matches(".*\\.(png|jpe?g)"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Renders one EAN-13 label per product into a temporary directory and seeds
+     * a share of them into the fake API so the run mixes DB hits and scrapes.
+     */
+    private List<Path> generateWorkload(FakeProductApi api, StoreStandInServer stores) throws Exception {
+        Path dir = Files.createTempDirectory("loadtest-images");
+        dir.toFile().deleteOnExit();
+        List<Path> images = new ArrayList<>();
+        Random random = new Random(1234);
+        for (int i = 0; i < productCount; i++) {
+            StringBuilder digits = new StringBuilder("62");
+            for (int d = 0; d < 10; d++) digits.append(random.nextInt(10));
+            String ean = digits.toString() + ean13CheckDigit(digits.toString());
+
+            BitMatrix matrix = new MultiFormatWriter().encode(ean, BarcodeFormat.EAN_13, 480, 240);
+            Path file = dir.resolve(String.format("product-%03d.png", i));
+            MatrixToImageWriter.writeToPath(matrix, "png", file);
+            file.toFile().deleteOnExit();
+            images.add(file);
+
+            if (i < Math.round(productCount * seedRatio)) {
+                api.seed(ean, StoreStandInServer.priceFor(PriceFetcher.AMAZON, ean),
+                        stores.baseUrls().get(PriceFetcher.AMAZON) + "/s?k=" + ean);
+            }
+        }
+        return images;
+    }
+
+    private static int ean13CheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int d = first12.charAt(i) - '0';
+            sum += (i % 2 == 0) ? d : 3 * d;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
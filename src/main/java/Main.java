@@ -1,7 +1,18 @@
+import ocr.IdentificationCache;
+import ocr.ImageIdentifier;
 import ocr.OCRService;
 import ocr.TesseractOCRService;
-import ocr.BarcodeScanner;
+import metrics.PipelineMetrics;
+import product.LookupLog;
+import product.PriceRefresher;
+import product.ProductIdentifier;
+import product.RefreshLog;
+import product.WriteBehindQueue;
+import product.WriteJournal;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Scanner;
 
 /**
@@ -25,15 +36,40 @@ public class Main {
      * @param args Command-line arguments (not used)
      */
     public static void main(String[] args) {
-        try (Scanner scanner = new Scanner(System.in)) {
+        try (Scanner scanner = new Scanner(System.in);
+             WriteBehindQueue writes = openWriteBehind();
+             IdentificationCache knownImages = openIdentificationCache();
+             LookupLog lookups = openLookupLog();
+             PriceRefresher background = Boolean.getBoolean("price.refresh") ? newRefresher() : null) {
+
+            ProductIdentifier.setWriteBehind(writes);
+            ProductIdentifier.setLookupLog(lookups);
+
+            // Refresh stored prices while the menu actions run, e.g. -Dprice.refresh=true
+            if (background != null) background.start();
 
             System.setProperty("jna.library.path", "/opt/homebrew/Cellar/tesseract/5.5.1_1/lib/");
-            OCRService ocr = new TesseractOCRService();
+
+            // Periodic per-stage latency dump, e.g. -Dmetrics.dumpSeconds=60
+            long dumpSeconds = Long.getLong("metrics.dumpSeconds", 0);
+            if (dumpSeconds > 0) {
+                PipelineMetrics.startPeriodicDump(Duration.ofSeconds(dumpSeconds));
+                Runtime.getRuntime().addShutdownHook(new Thread(PipelineMetrics::dump));
+            }
+
+            // Fast-pass-first OCR cascade, e.g. -Docr.cascadeThreshold=75
+            String cascadeThreshold = System.getProperty("ocr.cascadeThreshold");
+            OCRService ocr = cascadeThreshold != null
+                    ? new TesseractOCRService(Float.parseFloat(cascadeThreshold),
+                            TesseractOCRService.DEFAULT_FAST_MAX_DIMENSION)
+                    : new TesseractOCRService();
+            ImageIdentifier identifier = new ImageIdentifier(ocr, knownImages);
 
             System.out.println("\n----- MENU -----");
             System.out.println("1. Search for a product");
             System.out.println("2. Change product price");
             System.out.println("3. Delete product");
+            System.out.println("4. Run price refresher");
             System.out.println("0. Exit");
             System.out.print("Enter choice: ");
 
@@ -45,28 +81,11 @@ public class Main {
                     System.out.print("Enter image file path: ");
                     String path = scanner.nextLine();
 
-                    // First try barcode
-                    String barcode = BarcodeScanner.scanBarcode(path);
-                    String extractedText = null;
-
-                    if (barcode != null) {
-                        System.out.println("\n----- BARCODE DETECTED -----");
-                        System.out.println(barcode);
-                        extractedText = barcode;
-                    } else {
-                        System.out.println("No barcode detected. Running OCR...");
-                        try {
-                            extractedText = ocr.extractText(path);
-                            System.out.println("\n----- OCR OUTPUT -----");
-                            System.out.println(extractedText);
-                        } catch (Exception e) {
-                            System.out.println("OCR Error: " + e.getMessage());
-                            break;
-                        }
-                    }
+                    String extractedText = identify(identifier, path);
+                    if (extractedText == null) break;
 
                     try {
-                        product.ProductIdentifier.runProductLookup(extractedText);
+                        ProductIdentifier.runProductLookup(extractedText);
                     } catch (Exception e) {
                         System.out.println("Error in product lookup: " + e.getMessage());
                     }
@@ -76,28 +95,11 @@ public class Main {
                     System.out.print("Enter image file path: ");
                     String path2 = scanner.nextLine();
 
-                    // First try barcode
-                    String barcode2 = BarcodeScanner.scanBarcode(path2);
-                    String extractedText2 = null;
-
-                    if (barcode2 != null) {
-                        System.out.println("\n----- BARCODE DETECTED -----");
-                        System.out.println(barcode2);
-                        extractedText2 = barcode2;
-                    } else {
-                        System.out.println("No barcode detected. Running OCR...");
-                        try {
-                            extractedText2 = ocr.extractText(path2);
-                            System.out.println("\n----- OCR OUTPUT -----");
-                            System.out.println(extractedText2);
-                        } catch (Exception e) {
-                            System.out.println("OCR Error: " + e.getMessage());
-                            break;
-                        }
-                    }
+                    String extractedText2 = identify(identifier, path2);
+                    if (extractedText2 == null) break;
 
                     try {
-                        product.ProductIdentifier.runProductLookupToEditPrice(extractedText2);
+                        ProductIdentifier.runProductLookupToEditPrice(extractedText2);
                     } catch (Exception e) {
                         System.out.println("Error in product lookup: " + e.getMessage());
                     }
@@ -126,6 +128,21 @@ public class Main {
                     }
                     break;
 
+                case "4":
+                    if (background != null && background.isRunning()) {
+                        System.out.println("Background price refresher running. Press Enter to stop it.");
+                        scanner.nextLine();
+                        background.close();
+                        System.out.println("Background price refresher stopped.");
+                        break;
+                    }
+                    try (PriceRefresher refresher = newRefresher()) {
+                        refresher.start();
+                        System.out.println("Refreshing stored prices. Press Enter to stop.");
+                        scanner.nextLine();
+                    }
+                    break;
+
                 case "0":
                     System.out.println("Exiting...");
                     return;
@@ -133,6 +150,147 @@ public class Main {
                 default:
                     System.out.println("Invalid choice.");
             }
+        } catch (IOException e) {
+            System.out.println("Error closing write journal, identification cache or lookup log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Identifies the product in a photo (known image, barcode or OCR) and prints the result.
+     *
+     * @param identifier image identification pipeline
+     * @param path       image file path
+     * @return text to look the product up by, or null if identification failed
+     */
+    private static String identify(ImageIdentifier identifier, String path) {
+        ImageIdentifier.Identification result;
+        try {
+            result = identifier.identify(path);
+        } catch (Exception e) {
+            System.out.println("OCR Error: " + e.getMessage());
+            return null;
+        }
+        switch (result.source) {
+            case CACHE:
+                System.out.println("\n----- KNOWN IMAGE (hash distance " + result.hashDistance + ") -----");
+                break;
+            case BARCODE:
+                System.out.println("\n----- BARCODE DETECTED -----");
+                break;
+            default:
+                System.out.println("No barcode detected. Ran OCR.");
+                System.out.println("\n----- OCR OUTPUT -----");
+        }
+        System.out.println(result.text);
+        return result.text;
+    }
+
+    /**
+     * Opens the write-behind journal so product saves and price updates return
+     * immediately and survive an unreachable API. Writes left from a previous
+     * run are replayed.
+     *
+     * @return queue backed by the journal, or null to write synchronously if it cannot be opened
+     */
+    private static WriteBehindQueue openWriteBehind() {
+        String path = System.getProperty("journal.path", "journal/product-writes.journal");
+        try {
+            WriteJournal journal = new WriteJournal(Paths.get(path), WriteJournal.DEFAULT_CAPACITY, true);
+            reportRejectedWrites(journal);
+            return new WriteBehindQueue(journal, 16);
+        } catch (Exception e) {
+            System.out.println("Write journal unavailable, saving synchronously: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Tells the user about writes the API refused in this or earlier runs,
+     * which are kept in the journal's rejected-writes file.
+     *
+     * @param journal opened write journal
+     */
+    private static void reportRejectedWrites(WriteJournal journal) {
+        try {
+            int rejected = journal.rejectedCount();
+            if (rejected > 0) {
+                System.out.println(rejected + " product writes were rejected by the API and not saved; see "
+                        + journal.rejectedFile());
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read rejected product writes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the price refresher: 2 workers, a 10-minute scan interval, a
+     * 6-hour minimum age and rate-limited live stores.
+     *
+     * @return refresher, not yet started
+     */
+    private static PriceRefresher newRefresher() {
+        return new PriceRefresher(PriceRefresher.rateLimitedFetcher(), 2, Duration.ofMinutes(10),
+                Duration.ofHours(6), openRefreshLog());
+    }
+
+    /**
+     * Opens the log of price refresh times, kept in a file (override with
+     * {@code -Drefreshes.path}) so a new run skips products an earlier one
+     * refreshed less than the minimum age ago.
+     *
+     * @return file-backed log, or an in-memory one if the file cannot be read
+     */
+    private static RefreshLog openRefreshLog() {
+        String path = System.getProperty("refreshes.path", "cache/refresh-times.tsv");
+        try {
+            return new RefreshLog(Paths.get(path));
+        } catch (Exception e) {
+            System.out.println("Refresh log unavailable, remembering this run only: " + e.getMessage());
+            return new RefreshLog();
+        }
+    }
+
+    /**
+     * Opens the lookup log that the price refresher uses to favour frequently
+     * searched products. It is kept in a file (override with {@code -Dlookups.path})
+     * so counts add up across runs, and compacted to one line per title on exit.
+     *
+     * @return file-backed log, or an in-memory one if the file cannot be read
+     */
+    private static LookupLog openLookupLog() {
+        String path = System.getProperty("lookups.path", "cache/lookup-counts.log");
+        try {
+            return new LookupLog(Paths.get(path));
+        } catch (Exception e) {
+            System.out.println("Lookup log unavailable, counting this run only: " + e.getMessage());
+            return new LookupLog();
+        }
+    }
+
+    /**
+     * Opens the perceptual-hash cache of earlier identifications when enabled
+     * with {@code -Didentify.hashRadius=N}. A new photo within N bits of a known
+     * one reuses its text once a barcode scan confirms the match. Photos that
+     * were identified by OCR have no barcode to confirm them with, and are only
+     * reused within {@code -Didentify.ocrHashRadius=N} bits (default 1). The
+     * unsafe {@code -Didentify.verifyBarcode=false} skips the scan.
+     *
+     * @return cache, or null if disabled or it cannot be opened
+     */
+    private static IdentificationCache openIdentificationCache() {
+        String radius = System.getProperty("identify.hashRadius");
+        if (radius == null) return null;
+        String path = System.getProperty("identify.cachePath", "cache/identifications.tsv");
+        try {
+            int hashRadius = Integer.parseInt(radius);
+            String ocrRadius = System.getProperty("identify.ocrHashRadius");
+            return new IdentificationCache(Paths.get(path), hashRadius,
+                    ocrRadius != null ? Integer.parseInt(ocrRadius)
+                            : Math.min(hashRadius, IdentificationCache.DEFAULT_OCR_RADIUS),
+                    Boolean.parseBoolean(System.getProperty("identify.verifyBarcode", "true")));
+        } catch (Exception e) {
+            System.out.println("Identification cache unavailable: " + e.getMessage());
+            return null;
         }
     }
-}
\ No newline at end of file
+}
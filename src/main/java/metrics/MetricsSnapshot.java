@@ -0,0 +1,120 @@
+package metrics;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of all pipeline timers, value distributions and counters.
+ * <p>
+ * Latencies are reported in milliseconds; other values in their own unit.
+ */
+public class MetricsSnapshot {
+
+    /** Time at which the snapshot was taken */
+    public final Instant takenAt;
+
+    /** Latency statistics of successful executions per stage name, sorted by name */
+    public final Map<String, StageStats> stages;
+
+    /** Latency statistics of failed executions per stage name, sorted by name; only stages that failed */
+    public final Map<String, StageStats> failures;
+
+    /** Statistics per value distribution name, sorted by name */
+    public final Map<String, ValueStats> values;
+
+    /** Counter values per counter name, sorted by name */
+    public final Map<String, Long> counters;
+
+    MetricsSnapshot(Instant takenAt, Map<String, StageStats> stages, Map<String, StageStats> failures,
+                    Map<String, ValueStats> values, Map<String, Long> counters) {
+        this.takenAt = takenAt;
+        this.stages = Collections.unmodifiableMap(stages);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.values = Collections.unmodifiableMap(values);
+        this.counters = Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Latency statistics of a single stage.
+     */
+    public static class StageStats {
+
+        public final long count;
+        public final double meanMs;
+        public final double p50Ms;
+        public final double p90Ms;
+        public final double p99Ms;
+        public final double maxMs;
+
+        StageStats(long count, double meanMs, double p50Ms, double p90Ms, double p99Ms, double maxMs) {
+            this.count = count;
+            this.meanMs = meanMs;
+            this.p50Ms = p50Ms;
+            this.p90Ms = p90Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+        }
+    }
+
+    /**
+     * Statistics of a value distribution, e.g. OCR confidence.
+     */
+    public static class ValueStats {
+
+        public final long count;
+        public final double mean;
+        public final long min;
+        public final long p10;
+        public final long p50;
+        public final long p90;
+        public final long max;
+
+        ValueStats(long count, double mean, long min, long p10, long p50, long p90, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.min = min;
+            this.p10 = p10;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.max = max;
+        }
+    }
+
+    /**
+     * Formats the snapshot as a table, one line per stage, then the failed
+     * executions of stages that failed, the value distributions and the counters.
+     *
+     * @return human-readable snapshot
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Pipeline metrics at ").append(takenAt).append('\n');
+        appendStages(sb, "stage", stages);
+        if (!failures.isEmpty()) appendStages(sb, "failed stage", failures);
+        if (!values.isEmpty()) {
+            sb.append(String.format("%-28s %8s %10s %10s %10s %10s %10s %10s%n",
+                    "value", "count", "mean", "min", "p10", "p50", "p90", "max"));
+            for (Map.Entry<String, ValueStats> e : values.entrySet()) {
+                ValueStats v = e.getValue();
+                sb.append(String.format("%-28s %8d %10.2f %10d %10d %10d %10d %10d%n",
+                        e.getKey(), v.count, v.mean, v.min, v.p10, v.p50, v.p90, v.max));
+            }
+        }
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            sb.append(String.format("%-28s %8d%n", e.getKey(), e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    private static void appendStages(StringBuilder sb, String header, Map<String, StageStats> stages) {
+        sb.append(String.format("%-28s %8s %10s %10s %10s %10s %10s%n",
+                header, "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, StageStats> e : stages.entrySet()) {
+            StageStats s = e.getValue();
+            sb.append(String.format("%-28s %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    e.getKey(), s.count, s.meanMs, s.p50Ms, s.p90Ms, s.p99Ms, s.maxMs));
+        }
+    }
+}
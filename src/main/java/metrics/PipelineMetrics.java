@@ -0,0 +1,298 @@
+package metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide latency timers and counters for the identification pipeline.
+ * <p>
+ * Each stage (image decode, barcode, preprocessing steps, Tesseract, DB calls,
+ * each store scrape) has its own HdrHistogram so percentiles stay accurate
+ * from microseconds up to minutes. Failed executions go to a second histogram
+ * per stage, so a fast failure or a timeout does not skew the latency of
+ * successful ones. Usage:
+ * <pre>
+ * try (StageTimer t = PipelineMetrics.start(PipelineMetrics.OCR_TESSERACT)) {
+ *     ...
+ * }
+ * PipelineMetrics.increment(PipelineMetrics.PATH_BARCODE);
+ * </pre>
+ * Run with {@code -Dmetrics.enabled=false}, or call {@link #setEnabled(boolean)},
+ * to record nothing and emit no JFR events, e.g. to measure the
+ * un-instrumented pipeline.
+ */
+public final class PipelineMetrics {
+
+    // Stage names
+    public static final String IMAGE_DECODE = "image.decode";
+    public static final String IMAGE_HASH = "image.hash";
+    public static final String BARCODE_SCAN = "barcode.scan";
+    public static final String PREPROCESS_GRAYSCALE = "preprocess.grayscale";
+    public static final String PREPROCESS_UPSCALE = "preprocess.upscale";
+    public static final String PREPROCESS_BLUR = "preprocess.medianBlur";
+    public static final String PREPROCESS_STRETCH = "preprocess.contrastStretch";
+    public static final String PREPROCESS_THRESHOLD = "preprocess.threshold";
+    public static final String PREPROCESS_SHARPEN = "preprocess.sharpen";
+    public static final String OCR_TESSERACT = "ocr.tesseract";
+    public static final String OCR_FAST_PASS = "ocr.fastPass";
+    public static final String DB_LOOKUP = "db.lookup";
+    public static final String DB_SAVE = "db.save";
+    public static final String DB_UPDATE = "db.update";
+    public static final String DB_LIST = "db.list";
+    public static final String REFRESH = "refresh.product";
+    public static final String SCRAPE_DRIVER_START = "scrape.driverStart";
+    /** Prefix of the per-store scrape stages, followed by the store name */
+    public static final String SCRAPE_PREFIX = "scrape.";
+
+    // Counter names
+    public static final String PATH_BARCODE = "path.barcode";
+    public static final String PATH_OCR = "path.ocr";
+    public static final String PATH_CACHE = "path.cache";
+    public static final String HASH_MISS = "hash.miss";
+    public static final String HASH_REJECTED = "hash.rejected";
+    public static final String OCR_TIER_FAST = "ocr.tier.fast";
+    public static final String OCR_TIER_FULL = "ocr.tier.full";
+    public static final String DB_HIT = "db.hit";
+    public static final String DB_MISS = "db.miss";
+    public static final String REFRESH_UPDATED = "refresh.updated";
+    public static final String REFRESH_UNCHANGED = "refresh.unchanged";
+    public static final String REFRESH_FAILED = "refresh.failed";
+    public static final String WRITE_QUEUED = "write.queued";
+    public static final String WRITE_SENT = "write.sent";
+    public static final String WRITE_RETRIED = "write.retried";
+    public static final String WRITE_REJECTED = "write.rejected";
+    public static final String WRITE_DEDUPED = "write.deduped";
+    // Value distribution names
+    /** Mean word confidence (0-100) of every OCR fast pass, accepted or not */
+    public static final String OCR_FAST_CONFIDENCE = "ocr.fastConfidence";
+
+    /** Scrape outcome counters are {@code SCRAPE_PREFIX + store + ".ok"} or {@code ".error"} */
+    public static final String OK_SUFFIX = ".ok";
+    public static final String ERROR_SUFFIX = ".error";
+
+    private static final Logger log = LoggerFactory.getLogger(PipelineMetrics.class);
+
+    /** Significant decimal digits kept by every histogram */
+    private static final int PRECISION = 3;
+
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> failures = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> values = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled =
+            Boolean.parseBoolean(System.getProperty("metrics.enabled", "true"));
+
+    private static ScheduledExecutorService dumper;
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Turns recording on or off. While off, timers, counters and value
+     * distributions record nothing; what was recorded before is kept.
+     *
+     * @param on whether to record
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Whether recording is on.
+     *
+     * @return true unless turned off
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing one execution of a stage.
+     *
+     * @param stage stage name, one of the constants of this class
+     * @return timer to close when the stage is done; a shared no-op timer while disabled
+     */
+    public static StageTimer start(String stage) {
+        return enabled ? new StageTimer(stage) : StageTimer.DISABLED;
+    }
+
+    /**
+     * Times one execution of a stage, marking it failed if the body throws.
+     * Prefer this over {@link #start(String)} wherever the stage can end with
+     * an exception, so failures are not recorded as successful executions.
+     *
+     * @param stage stage name, one of the constants of this class
+     * @param body  stage to run
+     * @param <T>   result type
+     * @param <E>   checked exception thrown by the body
+     * @return result of the body
+     * @throws E if the body throws
+     */
+    public static <T, E extends Exception> T time(String stage, TimedStage<T, E> body) throws E {
+        try (StageTimer t = start(stage)) {
+            try {
+                return body.run(t);
+            } catch (Throwable e) {
+                t.fail();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Records an externally measured duration of a successful stage execution.
+     *
+     * @param stage        stage name
+     * @param elapsedNanos duration in nanoseconds
+     */
+    public static void record(String stage, long elapsedNanos) {
+        if (!enabled) return;
+        histograms.computeIfAbsent(stage, k -> new ConcurrentHistogram(PRECISION))
+                .recordValue(Math.max(0, elapsedNanos));
+    }
+
+    /**
+     * Records an externally measured duration of a failed stage execution,
+     * kept apart from the successful ones.
+     *
+     * @param stage        stage name
+     * @param elapsedNanos duration in nanoseconds
+     */
+    public static void recordFailure(String stage, long elapsedNanos) {
+        if (!enabled) return;
+        failures.computeIfAbsent(stage, k -> new ConcurrentHistogram(PRECISION))
+                .recordValue(Math.max(0, elapsedNanos));
+    }
+
+    /**
+     * Records one observation of a non-negative quantity other than latency,
+     * e.g. a confidence score, in its own distribution.
+     *
+     * @param name  distribution name, one of the constants of this class
+     * @param value observed value
+     */
+    public static void recordValue(String name, long value) {
+        if (!enabled) return;
+        values.computeIfAbsent(name, k -> new ConcurrentHistogram(PRECISION))
+                .recordValue(Math.max(0, value));
+    }
+
+    /**
+     * Increments a counter by one.
+     *
+     * @param counter counter name
+     */
+    public static void increment(String counter) {
+        if (!enabled) return;
+        counters.computeIfAbsent(counter, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Records the outcome of scraping one store.
+     *
+     * @param store store name
+     * @param ok    whether a price was obtained
+     */
+    public static void scrapeOutcome(String store, boolean ok) {
+        increment(SCRAPE_PREFIX + store + (ok ? OK_SUFFIX : ERROR_SUFFIX));
+    }
+
+    /**
+     * Takes a snapshot of all timers and counters recorded so far.
+     *
+     * @return snapshot sorted by name
+     */
+    public static MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.StageStats> stages = stageStats(histograms);
+        Map<String, MetricsSnapshot.StageStats> failedStages = stageStats(failures);
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            counts.put(e.getKey(), e.getValue().sum());
+        }
+        Map<String, MetricsSnapshot.ValueStats> distributions = new TreeMap<>();
+        for (Map.Entry<String, Histogram> e : values.entrySet()) {
+            Histogram h = e.getValue().copy();
+            distributions.put(e.getKey(), new MetricsSnapshot.ValueStats(
+                    h.getTotalCount(),
+                    h.getMean(),
+                    h.getMinValue(),
+                    h.getValueAtPercentile(10),
+                    h.getValueAtPercentile(50),
+                    h.getValueAtPercentile(90),
+                    h.getMaxValue()));
+        }
+        return new MetricsSnapshot(Instant.now(), stages, failedStages, distributions, counts);
+    }
+
+    private static Map<String, MetricsSnapshot.StageStats> stageStats(Map<String, Histogram> latencies) {
+        Map<String, MetricsSnapshot.StageStats> stats = new TreeMap<>();
+        for (Map.Entry<String, Histogram> e : latencies.entrySet()) {
+            Histogram h = e.getValue().copy();
+            stats.put(e.getKey(), new MetricsSnapshot.StageStats(
+                    h.getTotalCount(),
+                    h.getMean() / 1e6,
+                    h.getValueAtPercentile(50) / 1e6,
+                    h.getValueAtPercentile(90) / 1e6,
+                    h.getValueAtPercentile(99) / 1e6,
+                    h.getMaxValue() / 1e6));
+        }
+        return stats;
+    }
+
+    /**
+     * Clears all timers and counters.
+     */
+    public static void reset() {
+        histograms.clear();
+        failures.clear();
+        counters.clear();
+        values.clear();
+    }
+
+    /**
+     * Logs a snapshot at a fixed interval on a daemon thread. Calling it again
+     * replaces the previous schedule.
+     *
+     * @param interval time between two dumps
+     */
+    public static synchronized void startPeriodicDump(Duration interval) {
+        stopPeriodicDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = interval.toMillis();
+        dumper.scheduleAtFixedRate(PipelineMetrics::dump, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dump, if running.
+     */
+    public static synchronized void stopPeriodicDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    /**
+     * Logs the current snapshot once.
+     */
+    public static void dump() {
+        log.info("\n{}", snapshot());
+    }
+}
@@ -0,0 +1,28 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event emitted for every timed stage of the identification pipeline.
+ * <p>
+ * Recorded only while a flight recording is running, e.g. started with
+ * {@code -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start}.
+ */
+@Name("productocr.Stage")
+@Label("Pipeline Stage")
+@Category({"Product OCR", "Pipeline"})
+@Description("Duration of one stage of the product identification pipeline")
+class StageEvent extends Event {
+
+    @Label("Stage")
+    @Description("Stage name, e.g. ocr.tesseract or scrape.Amazon")
+    String stage;
+
+    @Label("Failed")
+    @Description("Whether the stage ended with an exception or a failed result")
+    boolean failed;
+}
@@ -0,0 +1,67 @@
+package metrics;
+
+/**
+ * Times one execution of a pipeline stage.
+ * <p>
+ * Obtained from {@link PipelineMetrics#start(String)} and meant to be used in a
+ * try-with-resources block; closing it records the elapsed time in the stage
+ * histogram, or in its failure histogram after {@link #fail()}, and commits
+ * the matching JFR event. An exception leaving the block
+ * does not mark the execution failed; use
+ * {@link PipelineMetrics#time(String, TimedStage)} for stages that can throw.
+ */
+public class StageTimer implements AutoCloseable {
+
+    /** Returned by {@link PipelineMetrics#start(String)} while metrics are disabled; records nothing */
+    static final StageTimer DISABLED = new StageTimer();
+
+    private final String stage;
+    private final long startNanos;
+    private final StageEvent event;
+    private boolean failed;
+    private boolean closed;
+
+    StageTimer(String stage) {
+        this.stage = stage;
+        this.event = new StageEvent();
+        this.event.begin();
+        this.startNanos = System.nanoTime();
+    }
+
+    private StageTimer() {
+        this.stage = null;
+        this.event = null;
+        this.startNanos = 0;
+        this.closed = true;
+    }
+
+    /**
+     * Marks this execution as failed; it is still timed, but apart from the
+     * successful executions.
+     */
+    public void fail() {
+        if (!closed) this.failed = true;
+    }
+
+    /**
+     * Stops the timer and records the elapsed time. Calling it again has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        long elapsed = System.nanoTime() - startNanos;
+        if (failed) {
+            PipelineMetrics.recordFailure(stage, elapsed);
+        } else {
+            PipelineMetrics.record(stage, elapsed);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+}
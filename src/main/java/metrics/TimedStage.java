@@ -0,0 +1,20 @@
+package metrics;
+
+/**
+ * Body of a stage timed by {@link PipelineMetrics#time(String, TimedStage)}.
+ *
+ * @param <T> result type
+ * @param <E> checked exception the body may throw
+ */
+@FunctionalInterface
+public interface TimedStage<T, E extends Exception> {
+
+    /**
+     * Runs the stage.
+     *
+     * @param timer timer of this execution, to {@link StageTimer#fail()} on a failed result
+     * @return stage result
+     * @throws E if the stage fails
+     */
+    T run(StageTimer timer) throws E;
+}
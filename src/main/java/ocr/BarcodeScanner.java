@@ -3,6 +3,7 @@ package ocr;
 import com.google.zxing.*;
 import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
 import com.google.zxing.common.HybridBinarizer;
+import metrics.PipelineMetrics;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -21,17 +22,39 @@ public class BarcodeScanner {
      */
     public static String scanBarcode(String imagePath) {
         try {
-            BufferedImage bufferedImage = ImageIO.read(new File(imagePath));
-            LuminanceSource source = new BufferedImageLuminanceSource(bufferedImage);
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-
-            Result result = new MultiFormatReader().decode(bitmap);
-            return result.getText();
-        } catch (NotFoundException e) {
-            return null; // No barcode found
+            BufferedImage bufferedImage = PipelineMetrics.time(PipelineMetrics.IMAGE_DECODE, t -> {
+                BufferedImage decoded = ImageIO.read(new File(imagePath));
+                if (decoded == null) t.fail();
+                return decoded;
+            });
+            return scanBarcode(bufferedImage);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    /**
+     * Scans a barcode from an already decoded image.
+     *
+     * @param bufferedImage image containing a barcode
+     * @return decoded barcode text, or null if no barcode is found
+     */
+    public static String scanBarcode(BufferedImage bufferedImage) {
+        return PipelineMetrics.time(PipelineMetrics.BARCODE_SCAN, t -> {
+            try {
+                LuminanceSource source = new BufferedImageLuminanceSource(bufferedImage);
+                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+
+                Result result = new MultiFormatReader().decode(bitmap);
+                return result.getText();
+            } catch (NotFoundException e) {
+                return null; // No barcode found
+            } catch (Exception e) {
+                t.fail();
+                e.printStackTrace();
+                return null;
+            }
+        });
+    }
 }
\ No newline at end of file
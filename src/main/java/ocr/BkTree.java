@@ -0,0 +1,128 @@
+package ocr;
+
+import java.util.ArrayDeque;
+
+/**
+ * Burkhard-Keller tree over 64-bit hashes with Hamming distance as the metric.
+ * <p>
+ * Each child hangs off its parent under its exact distance to it, so by the
+ * triangle inequality a search within radius {@code r} of a query at
+ * distance {@code d} from a node only descends into children keyed
+ * {@code d - r} to {@code d + r}. Not thread-safe.
+ *
+ * @param <V> value stored with each hash
+ */
+public class BkTree<V> {
+
+    /** Hamming distances between 64-bit hashes range over 0-64 */
+    private static final int MAX_DISTANCE = Long.SIZE;
+
+    private Node<V> root;
+    private int size;
+
+    /**
+     * A stored hash within the search radius.
+     *
+     * @param <V> value type
+     */
+    public static final class Match<V> {
+
+        /** Stored hash */
+        public final long hash;
+
+        /** Value stored with the hash */
+        public final V value;
+
+        /** Hamming distance from the query */
+        public final int distance;
+
+        Match(long hash, V value, int distance) {
+            this.hash = hash;
+            this.value = value;
+            this.distance = distance;
+        }
+    }
+
+    private static final class Node<V> {
+        final long hash;
+        V value;
+        @SuppressWarnings("unchecked")
+        Node<V>[] children = new Node[MAX_DISTANCE + 1];
+
+        Node(long hash, V value) {
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Adds a hash, replacing the value if the exact hash is already stored.
+     *
+     * @param hash  64-bit hash
+     * @param value value to store with it
+     */
+    public void add(long hash, V value) {
+        if (root == null) {
+            root = new Node<>(hash, value);
+            size++;
+            return;
+        }
+        Node<V> node = root;
+        while (true) {
+            int d = PerceptualHash.distance(hash, node.hash);
+            if (d == 0) {
+                node.value = value;
+                return;
+            }
+            Node<V> child = node.children[d];
+            if (child == null) {
+                node.children[d] = new Node<>(hash, value);
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Finds the closest stored hash within a radius.
+     *
+     * @param hash   query hash
+     * @param radius largest Hamming distance accepted
+     * @return closest match, or null if none is within the radius
+     */
+    public Match<V> nearest(long hash, int radius) {
+        if (root == null) return null;
+        Node<V> best = null;
+        int bestDistance = radius + 1;
+
+        ArrayDeque<Node<V>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node<V> node = pending.pop();
+            int d = PerceptualHash.distance(hash, node.hash);
+            if (d < bestDistance) {
+                best = node;
+                bestDistance = d;
+                if (d == 0) break;
+            }
+            // Only hashes closer than the best so far are of interest, which narrows the window as we go
+            int reach = bestDistance - 1;
+            int lo = Math.max(1, d - reach), hi = Math.min(MAX_DISTANCE, d + reach);
+            for (int k = lo; k <= hi; k++) {
+                Node<V> child = node.children[k];
+                if (child != null) pending.push(child);
+            }
+        }
+        return best == null ? null : new Match<>(best.hash, best.value, bestDistance);
+    }
+
+    /**
+     * Number of distinct hashes stored.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+}
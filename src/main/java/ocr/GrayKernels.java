@@ -0,0 +1,143 @@
+package ocr;
+
+/**
+ * Per-pixel kernels of the OCR preprocessing chain, on 8-bit grayscale images
+ * stored row-major in a {@code byte[]} (pixel values 0-255, read unsigned).
+ * Each kernel reproduces the arithmetic of the matching Java2D stage in
+ * {@link ImagePreprocessor}, so both chains produce the same pixels.
+ * <p>
+ * {@link ScalarGrayKernels} is the reference implementation;
+ * {@code VectorGrayKernels} computes bit-identical results with the incubating
+ * Vector API. It lives in {@code src/vector/java} and is only compiled into
+ * builds made with {@code -Pvector}. Use {@link #best()} to get the fastest
+ * one available.
+ */
+public interface GrayKernels {
+
+    /**
+     * Box blur: sum of the 3x3 neighbourhood, divided by 9 in 16-bit fixed
+     * point. Truncating {@code sum * 7282 >> 16} equals {@code sum / 9} for
+     * every sum up to 9 * 255, which is what {@link java.awt.image.ConvolveOp} yields.
+     */
+    int[] BLUR_WEIGHTS = {1, 1, 1, 1, 1, 1, 1, 1, 1};
+    int BLUR_MULTIPLIER = 7282; // round(65536 / 9)
+    int BLUR_SHIFT = 16;
+
+    /** Sharpen: 5 * centre minus the four direct neighbours */
+    int[] SHARPEN_WEIGHTS = {0, -1, 0, -1, 5, -1, 0, -1, 0};
+
+    /**
+     * Converts packed RGB pixels to gray with integer luma weights:
+     * {@code (77 R + 150 G + 29 B + 128) >> 8}.
+     *
+     * @param rgb  packed 0xRRGGBB pixels (alpha ignored)
+     * @param gray output, same length
+     */
+    void rgbToGray(int[] rgb, byte[] gray);
+
+    /**
+     * Finds the smallest and largest pixel value.
+     *
+     * @param gray pixels
+     * @return {@code {min, max}}
+     */
+    int[] minMax(byte[] gray);
+
+    /**
+     * Linearly maps {@code [min, max]} to {@code [0, 255]} through
+     * {@link #stretchTable(int, int)}. Copies the input if {@code max == min}.
+     *
+     * @param src input pixels
+     * @param dst output, same length
+     * @param min smallest input value
+     * @param max largest input value
+     */
+    void stretch(byte[] src, byte[] dst, int min, int max);
+
+    /**
+     * Output level of {@link #stretch} for every input level, computed in
+     * float as {@link ImagePreprocessor#contrastStretch} does:
+     * {@code Math.round((p - min) * (255f / (max - min)))}, clamped to 0-255.
+     * A fixed-point factor cannot replace the float one: where the exact
+     * product lies halfway between two levels, the float error decides the
+     * rounding direction, and it differs from one product to the next.
+     *
+     * @param min smallest input value
+     * @param max largest input value, greater than min
+     * @return 256 output levels, indexed by input level
+     */
+    static int[] stretchTable(int min, int max) {
+        float scale = 255f / (max - min);
+        int[] table = new int[256];
+        for (int p = 0; p < table.length; p++) {
+            table[p] = Math.max(0, Math.min(255, Math.round((p - min) * scale)));
+        }
+        return table;
+    }
+
+    /**
+     * Global mean threshold: 255 where a pixel is above the integer mean, 0 elsewhere.
+     *
+     * @param src input pixels
+     * @param dst output, same length
+     */
+    void threshold(byte[] src, byte[] dst);
+
+    /**
+     * 3x3 integer convolution, {@code clamp((sum(w[i] * p[i]) * multiplier) >> shift, 0, 255)}.
+     * The shift truncates, as {@link java.awt.image.ConvolveOp} does when it
+     * stores the result. Border pixels are set to 0, as
+     * {@link java.awt.image.ConvolveOp#EDGE_ZERO_FILL} does.
+     *
+     * @param src        input pixels
+     * @param dst        output, same length
+     * @param width      image width
+     * @param height     image height
+     * @param weights    nine kernel weights, row-major
+     * @param multiplier fixed-point scale applied to the weighted sum
+     * @param shift      right shift applied after scaling
+     */
+    void convolve3x3(byte[] src, byte[] dst, int width, int height, int[] weights, int multiplier, int shift);
+
+    /**
+     * Short name shown in logs and benchmarks.
+     *
+     * @return implementation name
+     */
+    String name();
+
+    /**
+     * Returns the vector implementation when it was built in, {@code jdk.incubator.vector}
+     * is resolved in this JVM (run with {@code --add-modules jdk.incubator.vector})
+     * and it is not disabled with {@code -Docr.vector=false}; the scalar one otherwise.
+     *
+     * @return fastest available kernels
+     */
+    static GrayKernels best() {
+        return Holder.BEST;
+    }
+
+    /** Lazily picks the implementation once per JVM */
+    final class Holder {
+
+        static final GrayKernels BEST = select();
+
+        private Holder() {
+        }
+
+        private static GrayKernels select() {
+            if (!Boolean.parseBoolean(System.getProperty("ocr.vector", "true"))
+                    || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return new ScalarGrayKernels();
+            }
+            try {
+                // Loaded reflectively: the class is absent unless built with -Pvector,
+                // and this class must link without the incubator module
+                return (GrayKernels) Class.forName("ocr.VectorGrayKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+                return new ScalarGrayKernels();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ocr;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Remembers the identified product text of past images by perceptual hash,
+ * so a photo of an already identified label can skip OCR (and, with
+ * verification off, the barcode scan as well).
+ * <p>
+ * Hashes are kept in a {@link BkTree} and persisted to an append-only text
+ * file, one {@code hash<TAB>barcode<TAB>text} line per identification, which
+ * is replayed on open. A later line for the same hash replaces an earlier one.
+ * <p>
+ * A barcode scan can confirm a match on an entry identified by its barcode,
+ * but not one identified by OCR: the new photo having no barcode says nothing
+ * about which label it shows. With verification on, OCR entries are therefore
+ * only matched within the much tighter {@link #ocrRadius()}, which in practice
+ * means a re-encoded or re-sent copy of the same photo.
+ */
+public class IdentificationCache implements Closeable {
+
+    /** Default largest Hamming distance for reusing an identification made by OCR */
+    public static final int DEFAULT_OCR_RADIUS = 1;
+
+    private final BkTree<Entry> tree = new BkTree<>();
+    private final int radius;
+    private final int ocrRadius;
+    private final boolean verifyBarcode;
+    private final BufferedWriter out;
+
+    /**
+     * A remembered identification.
+     */
+    public static final class Entry {
+
+        /** Identified product text */
+        public final String text;
+
+        /** Barcode the text came from, or null if it came from OCR */
+        public final String barcode;
+
+        Entry(String text, String barcode) {
+            this.text = text;
+            this.barcode = barcode;
+        }
+    }
+
+    /**
+     * Opens the cache with the default radius for OCR entries.
+     *
+     * @param file          cache file, created if missing
+     * @param radius        largest Hamming distance (0-64) accepted as a match
+     * @param verifyBarcode whether matches must be confirmed with a barcode scan; without it a
+     *                      match between two products that hash alike returns the wrong text
+     * @throws IOException if the file cannot be read or opened for appending
+     */
+    public IdentificationCache(Path file, int radius, boolean verifyBarcode) throws IOException {
+        this(file, radius, Math.min(radius, DEFAULT_OCR_RADIUS), verifyBarcode);
+    }
+
+    /**
+     * Opens the cache, loading identifications stored by earlier runs.
+     *
+     * @param file          cache file, created if missing
+     * @param radius        largest Hamming distance (0-64) accepted as a match
+     * @param ocrRadius     largest Hamming distance (0 to {@code radius}) at which an entry
+     *                      identified by OCR is reused when verification is on
+     * @param verifyBarcode whether matches must be confirmed with a barcode scan; without it a
+     *                      match between two products that hash alike returns the wrong text
+     * @throws IOException if the file cannot be read or opened for appending
+     */
+    public IdentificationCache(Path file, int radius, int ocrRadius, boolean verifyBarcode) throws IOException {
+        if (radius < 0 || radius > Long.SIZE) {
+            throw new IllegalArgumentException("radius must be between 0 and 64: " + radius);
+        }
+        if (ocrRadius < 0 || ocrRadius > radius) {
+            throw new IllegalArgumentException("ocrRadius must be between 0 and " + radius + ": " + ocrRadius);
+        }
+        this.radius = radius;
+        this.ocrRadius = ocrRadius;
+        this.verifyBarcode = verifyBarcode;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        if (Files.exists(file)) load(file);
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Finds the closest remembered image within the radius.
+     *
+     * @param hash perceptual hash of the new image
+     * @return closest match, or null if none is close enough
+     */
+    public synchronized BkTree.Match<Entry> find(long hash) {
+        return tree.nearest(hash, radius);
+    }
+
+    /**
+     * Remembers how an image was identified.
+     *
+     * @param hash    perceptual hash of the image
+     * @param text    identified product text
+     * @param barcode barcode the text came from, or null if it came from OCR
+     * @throws IOException if the entry cannot be written to the file
+     */
+    public synchronized void remember(long hash, String text, String barcode) throws IOException {
+        tree.add(hash, new Entry(text, barcode));
+        out.write(String.format("%016x", hash) + '\t' + (barcode == null ? "" : escape(barcode))
+                + '\t' + escape(text));
+        out.newLine();
+        out.flush();
+    }
+
+    /**
+     * Whether matches should be confirmed with a barcode scan before use.
+     *
+     * @return true if verification is on
+     */
+    public boolean verifiesBarcode() {
+        return verifyBarcode;
+    }
+
+    /**
+     * Largest Hamming distance at which an entry identified by OCR is reused
+     * when verification is on, since no barcode scan can confirm it.
+     *
+     * @return radius for OCR entries
+     */
+    public int ocrRadius() {
+        return ocrRadius;
+    }
+
+    /**
+     * Number of distinct hashes remembered.
+     *
+     * @return size
+     */
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void load(Path file) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                // Skip a line torn by a crash mid-write
+                if (fields.length != 3 || fields[0].length() != 16) continue;
+                try {
+                    long hash = Long.parseUnsignedLong(fields[0], 16);
+                    String barcode = fields[1].isEmpty() ? null : unescape(fields[1]);
+                    tree.add(hash, new Entry(unescape(fields[2]), barcode));
+                } catch (NumberFormatException e) {
+                    // Corrupt line, ignore
+                }
+            }
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
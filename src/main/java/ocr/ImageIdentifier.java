@@ -0,0 +1,157 @@
+package ocr;
+
+import metrics.PipelineMetrics;
+import metrics.StageTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Turns a product photo into the text used for the product lookup.
+ * <p>
+ * The image is decoded once and tried in order of cost: a perceptual-hash
+ * match against previously identified images (when an
+ * {@link IdentificationCache} is set), a barcode scan, then OCR. With barcode
+ * verification on, a hash match is only used if a barcode scan of the new
+ * image agrees with how the stored image was identified. For an entry
+ * identified by its barcode, the new image must have that same barcode. For
+ * an entry identified by OCR, the new image must have no barcode and lie
+ * within {@link IdentificationCache#ocrRadius()}.
+ * <p>
+ * A verified match on an entry that was identified by its barcode saves no
+ * work, since the verifying scan already yields that barcode. Verified reuse
+ * only pays off for entries identified by OCR, where it replaces OCR with a
+ * barcode scan. Those matches are not confirmed by anything but the hash: two
+ * barcode-less labels whose photos differ in at most {@code ocrRadius} bits,
+ * such as two flavours of one brand shot the same way, get the same text.
+ */
+public class ImageIdentifier {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageIdentifier.class);
+
+    private final OCRService ocr;
+    private final IdentificationCache cache;
+
+    /**
+     * How an image was identified.
+     */
+    public enum Source {
+        /** Reused from a perceptually similar image */
+        CACHE,
+        /** Decoded barcode */
+        BARCODE,
+        /** OCR text */
+        OCR
+    }
+
+    /**
+     * Identified product text and where it came from.
+     */
+    public static final class Identification {
+
+        /** Text to look the product up by */
+        public final String text;
+
+        /** How the text was obtained */
+        public final Source source;
+
+        /** Hamming distance to the reused image, or -1 if not from the cache */
+        public final int hashDistance;
+
+        Identification(String text, Source source, int hashDistance) {
+            this.text = text;
+            this.source = source;
+            this.hashDistance = hashDistance;
+        }
+    }
+
+    /**
+     * Creates an identifier.
+     *
+     * @param ocr   OCR fallback when no barcode is found, or null to use barcodes only
+     * @param cache perceptual-hash cache of earlier identifications, or null to disable reuse
+     */
+    public ImageIdentifier(OCRService ocr, IdentificationCache cache) {
+        this.ocr = ocr;
+        this.cache = cache;
+    }
+
+    /**
+     * Identifies the product in an image file.
+     *
+     * @param imagePath path to the image file
+     * @return identification, or null if no barcode was found and OCR is disabled
+     * @throws Exception if the image cannot be read or OCR fails
+     */
+    public Identification identify(String imagePath) throws Exception {
+        BufferedImage image = PipelineMetrics.time(PipelineMetrics.IMAGE_DECODE, t -> {
+            BufferedImage decoded = ImageIO.read(new File(imagePath));
+            if (decoded == null) throw new IOException("Could not read image file: " + imagePath);
+            return decoded;
+        });
+
+        long hash = 0;
+        String barcode = null;
+        boolean scanned = false;
+        if (cache != null) {
+            try (StageTimer t = PipelineMetrics.start(PipelineMetrics.IMAGE_HASH)) {
+                hash = PerceptualHash.dHash(image);
+            }
+            BkTree.Match<IdentificationCache.Entry> known = cache.find(hash);
+            if (known == null) {
+                PipelineMetrics.increment(PipelineMetrics.HASH_MISS);
+            } else if (cache.verifiesBarcode()) {
+                barcode = BarcodeScanner.scanBarcode(image);
+                scanned = true;
+                if (!confirms(known, barcode, cache.ocrRadius())) {
+                    PipelineMetrics.increment(PipelineMetrics.HASH_REJECTED);
+                    known = null;
+                }
+            }
+            if (known != null) {
+                PipelineMetrics.increment(PipelineMetrics.PATH_CACHE);
+                return new Identification(known.value.text, Source.CACHE, known.distance);
+            }
+        }
+
+        if (!scanned) barcode = BarcodeScanner.scanBarcode(image);
+        Identification result;
+        if (barcode != null) {
+            PipelineMetrics.increment(PipelineMetrics.PATH_BARCODE);
+            result = new Identification(barcode, Source.BARCODE, -1);
+        } else if (ocr != null) {
+            PipelineMetrics.increment(PipelineMetrics.PATH_OCR);
+            result = new Identification(ocr.extractText(image), Source.OCR, -1);
+        } else {
+            return null;
+        }
+
+        if (cache != null && result.text != null && !result.text.isBlank()) {
+            try {
+                cache.remember(hash, result.text, barcode);
+            } catch (IOException e) {
+                log.warn("Could not persist identification of {}: {}", imagePath, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether a barcode scan of the new image confirms a hash match. A missing
+     * barcode never matches a stored one, and only confirms an OCR entry that
+     * is close enough that no other label is likely to hash the same.
+     *
+     * @param known     closest remembered image
+     * @param barcode   barcode of the new image, or null if none was found
+     * @param ocrRadius largest distance at which an OCR entry is reused
+     * @return true if the stored text may be used
+     */
+    static boolean confirms(BkTree.Match<IdentificationCache.Entry> known, String barcode, int ocrRadius) {
+        if (known.value.barcode != null) return known.value.barcode.equals(barcode);
+        return barcode == null && known.distance <= ocrRadius;
+    }
+}
@@ -0,0 +1,287 @@
+package ocr;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import metrics.PipelineMetrics;
+import metrics.StageTimer;
+
+/**
+ * Image preprocessing stages applied before OCR.
+ * <p>
+ * Each stage is exposed on its own so it can be measured or reused
+ * independently of the Tesseract engine.
+ * <p>
+ * With {@code -Docr.preprocess=kernels} the chain runs on raw byte arrays
+ * through {@link GrayKernels} instead of Java2D, using the Vector API when
+ * built with {@code -Pvector} and the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+public final class ImagePreprocessor {
+
+    /** Whether {@link #preprocessForOCR} uses {@link GrayKernels} instead of Java2D */
+    private static final boolean USE_KERNELS =
+            "kernels".equalsIgnoreCase(System.getProperty("ocr.preprocess", "java2d"));
+
+    private ImagePreprocessor() {
+    }
+
+    /**
+     * Runs the full preprocessing chain to enhance OCR accuracy.
+     *
+     * @param src input image
+     * @return preprocessed image
+     */
+    public static BufferedImage preprocessForOCR(BufferedImage src) {
+        if (USE_KERNELS) return preprocessForOCR(src, GrayKernels.best());
+
+        BufferedImage gray;
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_GRAYSCALE)) {
+            gray = toGrayscale(src);
+        }
+        int minDim = Math.min(gray.getWidth(), gray.getHeight());
+        if (minDim < 300) {
+            try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_UPSCALE)) {
+                gray = scaleImage(gray, 2.0);
+            }
+        }
+        BufferedImage denoised;
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_BLUR)) {
+            denoised = medianBlur(gray);
+        }
+        BufferedImage contrasted;
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_STRETCH)) {
+            contrasted = contrastStretch(denoised);
+        }
+        BufferedImage binary;
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_THRESHOLD)) {
+            binary = adaptiveThreshold(contrasted);
+        }
+        BufferedImage sharp;
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_SHARPEN)) {
+            sharp = sharpenImage(binary);
+        }
+        return sharp;
+    }
+
+    /**
+     * Runs the preprocessing chain on byte arrays with the given kernels.
+     * Stages, metrics and output pixels match {@link #preprocessForOCR(BufferedImage)};
+     * the result is always a TYPE_BYTE_GRAY image holding 0 and 255.
+     *
+     * @param src     input image
+     * @param kernels kernel implementation to run
+     * @return preprocessed 8-bit grayscale image
+     */
+    public static BufferedImage preprocessForOCR(BufferedImage src, GrayKernels kernels) {
+        int w = src.getWidth(), h = src.getHeight();
+        byte[] a = new byte[w * h];
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_GRAYSCALE)) {
+            kernels.rgbToGray(src.getRGB(0, 0, w, h, null, 0, w), a);
+        }
+        if (Math.min(w, h) < 300) {
+            try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_UPSCALE)) {
+                BufferedImage scaled = scaleImage(toImage(a, w, h), 2.0);
+                w = scaled.getWidth();
+                h = scaled.getHeight();
+                a = pixels(scaled);
+            }
+        }
+        byte[] b = new byte[a.length];
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_BLUR)) {
+            kernels.convolve3x3(a, b, w, h, GrayKernels.BLUR_WEIGHTS,
+                    GrayKernels.BLUR_MULTIPLIER, GrayKernels.BLUR_SHIFT);
+        }
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_STRETCH)) {
+            int[] range = kernels.minMax(b);
+            kernels.stretch(b, a, range[0], range[1]);
+        }
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_THRESHOLD)) {
+            kernels.threshold(a, b);
+        }
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.PREPROCESS_SHARPEN)) {
+            kernels.convolve3x3(b, a, w, h, GrayKernels.SHARPEN_WEIGHTS, 1, 0);
+        }
+        return toImage(a, w, h);
+    }
+
+    /**
+     * Copies grayscale pixels into a new TYPE_BYTE_GRAY image.
+     *
+     * @param gray   row-major pixels
+     * @param width  image width
+     * @param height image height
+     * @return image holding the pixels
+     */
+    public static BufferedImage toImage(byte[] gray, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        System.arraycopy(gray, 0, data, 0, gray.length);
+        return img;
+    }
+
+    /**
+     * Copies the pixels of a TYPE_BYTE_GRAY image into a row-major array.
+     *
+     * @param gray 8-bit grayscale image
+     * @return pixel values
+     */
+    public static byte[] pixels(BufferedImage gray) {
+        return ((DataBufferByte) gray.getRaster().getDataBuffer()).getData().clone();
+    }
+
+    /**
+     * Converts an image to grayscale.
+     *
+     * @param src input image
+     * @return grayscale image
+     */
+    public static BufferedImage toGrayscale(BufferedImage src) {
+        BufferedImage gray = new BufferedImage(src.getWidth(), src.getHeight(),
+                BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.drawImage(src, 0, 0, null);
+        g.dispose();
+        return gray;
+    }
+
+    /**
+     * Scales an image by a given factor.
+     *
+     * @param src   input image
+     * @param scale scaling factor
+     * @return scaled image
+     */
+    public static BufferedImage scaleImage(BufferedImage src, double scale) {
+        int w = (int) Math.round(src.getWidth() * scale);
+        int h = (int) Math.round(src.getHeight() * scale);
+        BufferedImage scaled = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = scaled.createGraphics();
+        g.drawImage(src, 0, 0, w, h, null);
+        g.dispose();
+        return scaled;
+    }
+
+    /**
+     * Shrinks an image so that its longest side is at most {@code maxDim},
+     * using bilinear filtering so thin strokes survive. Smaller images are
+     * returned unchanged.
+     *
+     * @param src    input grayscale image
+     * @param maxDim maximum width or height of the result
+     * @return downscaled image, or src if already small enough
+     */
+    public static BufferedImage downscaleToFit(BufferedImage src, int maxDim) {
+        int longest = Math.max(src.getWidth(), src.getHeight());
+        if (longest <= maxDim) return src;
+
+        double scale = (double) maxDim / longest;
+        int w = Math.max(1, (int) Math.round(src.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(src.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(src, 0, 0, w, h, null);
+        g.dispose();
+        return scaled;
+    }
+
+    /**
+     * Applies a simple median-like blur to reduce noise.
+     *
+     * @param src input image
+     * @return denoised image
+     */
+    public static BufferedImage medianBlur(BufferedImage src) {
+        float[] kernel = {
+                1/9f, 1/9f, 1/9f,
+                1/9f, 1/9f, 1/9f,
+                1/9f, 1/9f, 1/9f
+        };
+        Kernel k = new Kernel(3, 3, kernel);
+        ConvolveOp op = new ConvolveOp(k);
+        return op.filter(src, null);
+    }
+
+    /**
+     * Enhances contrast of an image.
+     *
+     * @param src input image
+     * @return contrast-stretched image
+     */
+    public static BufferedImage contrastStretch(BufferedImage src) {
+        Raster r = src.getRaster();
+        int w = src.getWidth(), h = src.getHeight();
+        int[] pixels = new int[w * h];
+        r.getPixels(0, 0, w, h, pixels);
+
+        int min = 255, max = 0;
+        for (int p : pixels) {
+            if (p < min) min = p;
+            if (p > max) max = p;
+        }
+        if (max == min) return src;
+
+        float scale = 255f / (max - min);
+        for (int i = 0; i < pixels.length; i++) {
+            int v = Math.round((pixels[i] - min) * scale);
+            pixels[i] = Math.min(255, Math.max(0, v));
+        }
+
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        out.getRaster().setPixels(0, 0, w, h, pixels);
+        return out;
+    }
+
+    /**
+     * Applies adaptive thresholding to convert grayscale to binary image.
+     *
+     * @param src input grayscale image
+     * @return binary image
+     */
+    public static BufferedImage adaptiveThreshold(BufferedImage src) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        Raster raster = src.getRaster();
+        int[] pixels = new int[w * h];
+        raster.getPixels(0, 0, w, h, pixels);
+
+        long sum = 0;
+        for (int v : pixels) sum += v;
+        int mean = (int) (sum / pixels.length);
+
+        BufferedImage bin = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster wr = bin.getRaster();
+        int idx = 0;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int val = (pixels[idx++] > mean) ? 255 : 0;
+                wr.setSample(x, y, 0, val);
+            }
+        }
+        return bin;
+    }
+
+    /**
+     * Sharpens the image to improve OCR accuracy.
+     *
+     * @param src input image
+     * @return sharpened image
+     */
+    public static BufferedImage sharpenImage(BufferedImage src) {
+        float[] sharpKernel = {
+                0.f, -1.f, 0.f,
+                -1.f, 5.f, -1.f,
+                0.f, -1.f, 0.f
+        };
+        Kernel kernel = new Kernel(3, 3, sharpKernel);
+        ConvolveOp op = new ConvolveOp(kernel);
+        return op.filter(src, null);
+    }
+}
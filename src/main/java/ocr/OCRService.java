@@ -1,5 +1,7 @@
 package ocr;
 
+import java.awt.image.BufferedImage;
+
 /**
  * Interface for OCR services that extract text from images.
  */
@@ -13,4 +15,13 @@ public interface OCRService {
      * @throws Exception if the image cannot be read or OCR fails
      */
     String extractText(String imagePath) throws Exception;
+
+    /**
+     * Extracts text from an already decoded image.
+     *
+     * @param image decoded image
+     * @return extracted text as a String
+     * @throws Exception if OCR fails
+     */
+    String extractText(BufferedImage image) throws Exception;
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package ocr;
+
+/**
+ * Text recognized from an image, together with how it was obtained.
+ */
+public class OcrResult {
+
+    /** Recognition tier that produced the text */
+    public enum Tier {
+        /** Downscaled image, grayscale only, single-block segmentation */
+        FAST,
+        /** Full preprocessing chain and automatic page segmentation */
+        FULL
+    }
+
+    /** Recognized text */
+    public final String text;
+
+    /** Tier that answered */
+    public final Tier tier;
+
+    /** Mean word confidence (0-100) of the fast pass, or -1 if no fast pass ran */
+    public final float fastConfidence;
+
+    /**
+     * Constructs a new OcrResult.
+     *
+     * @param text           recognized text
+     * @param tier           tier that answered
+     * @param fastConfidence mean word confidence of the fast pass, or -1 if none ran
+     */
+    public OcrResult(String text, Tier tier, float fastConfidence) {
+        this.text = text;
+        this.tier = tier;
+        this.fastConfidence = fastConfidence;
+    }
+}
@@ -0,0 +1,73 @@
+package ocr;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 64-bit difference hash (dHash) of an image.
+ * <p>
+ * The image is reduced to a 9x8 grid of mean luma values, and each bit records
+ * whether a cell is darker than its right-hand neighbour. Rescaling,
+ * recompression and small changes in exposure leave most bits unchanged, so
+ * two photos of the same label are a small Hamming distance apart.
+ */
+public final class PerceptualHash {
+
+    private static final int COLS = 9;
+    private static final int ROWS = 8;
+
+    /** Samples taken per cell along each axis; large photos are not read pixel by pixel */
+    private static final int SAMPLES_PER_CELL = 32;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Computes the difference hash of an image.
+     *
+     * @param image decoded image
+     * @return 64-bit hash, row-major with the top-left comparison in the highest bit
+     */
+    public static long dHash(BufferedImage image) {
+        int w = image.getWidth(), h = image.getHeight();
+        long[] sums = new long[COLS * ROWS];
+        int[] counts = new int[COLS * ROWS];
+        int stepX = Math.max(1, w / (COLS * SAMPLES_PER_CELL));
+        int stepY = Math.max(1, h / (ROWS * SAMPLES_PER_CELL));
+
+        int[] row = new int[w];
+        for (int y = 0; y < h; y += stepY) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            int cellRow = (int) ((long) y * ROWS / h) * COLS;
+            for (int x = 0; x < w; x += stepX) {
+                int p = row[x];
+                int luma = (77 * ((p >>> 16) & 0xFF) + 150 * ((p >>> 8) & 0xFF) + 29 * (p & 0xFF)) >>> 8;
+                int cell = cellRow + (int) ((long) x * COLS / w);
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLS - 1; c++) {
+                int left = r * COLS + c;
+                // Compare the means without dividing: a/m < b/n  <=>  a*n < b*m
+                boolean darker = sums[left] * Math.max(1, counts[left + 1])
+                        < sums[left + 1] * Math.max(1, counts[left]);
+                hash = (hash << 1) | (darker ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Number of differing bits between two hashes.
+     *
+     * @param a first hash
+     * @param b second hash
+     * @return Hamming distance, 0-64
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
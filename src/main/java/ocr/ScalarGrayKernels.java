@@ -0,0 +1,92 @@
+package ocr;
+
+/**
+ * Reference scalar implementation of {@link GrayKernels}, one pixel per iteration.
+ */
+public class ScalarGrayKernels implements GrayKernels {
+
+    @Override
+    public void rgbToGray(int[] rgb, byte[] gray) {
+        for (int i = 0; i < rgb.length; i++) {
+            int p = rgb[i];
+            int r = (p >>> 16) & 0xFF, g = (p >>> 8) & 0xFF, b = p & 0xFF;
+            gray[i] = (byte) ((77 * r + 150 * g + 29 * b + 128) >>> 8);
+        }
+    }
+
+    @Override
+    public int[] minMax(byte[] gray) {
+        int min = 255, max = 0;
+        for (byte v : gray) {
+            int p = v & 0xFF;
+            if (p < min) min = p;
+            if (p > max) max = p;
+        }
+        return new int[]{min, max};
+    }
+
+    @Override
+    public void stretch(byte[] src, byte[] dst, int min, int max) {
+        if (max == min) {
+            System.arraycopy(src, 0, dst, 0, src.length);
+            return;
+        }
+        int[] table = GrayKernels.stretchTable(min, max);
+        for (int i = 0; i < src.length; i++) {
+            dst[i] = (byte) table[src[i] & 0xFF];
+        }
+    }
+
+    @Override
+    public void threshold(byte[] src, byte[] dst) {
+        long sum = 0;
+        for (byte v : src) sum += v & 0xFF;
+        int mean = (int) (sum / src.length);
+
+        for (int i = 0; i < src.length; i++) {
+            dst[i] = (byte) ((src[i] & 0xFF) > mean ? 255 : 0);
+        }
+    }
+
+    @Override
+    public void convolve3x3(byte[] src, byte[] dst, int width, int height, int[] weights, int multiplier, int shift) {
+        clearBorder(dst, width, height);
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                dst[y * width + x] = (byte) convolveAt(src, width, x, y, weights, multiplier, shift);
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    /**
+     * Computes one interior output pixel of {@link #convolve3x3}.
+     */
+    static int convolveAt(byte[] src, int width, int x, int y, int[] w, int multiplier, int shift) {
+        int sum = 0, k = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            int row = (y + dy) * width + x;
+            for (int dx = -1; dx <= 1; dx++) {
+                sum += w[k++] * (src[row + dx] & 0xFF);
+            }
+        }
+        int v = (sum * multiplier) >> shift;
+        return Math.max(0, Math.min(255, v));
+    }
+
+    /**
+     * Zeroes the first and last row and column.
+     */
+    static void clearBorder(byte[] dst, int width, int height) {
+        java.util.Arrays.fill(dst, 0, Math.min(width, dst.length), (byte) 0);
+        java.util.Arrays.fill(dst, Math.max(0, (height - 1) * width), dst.length, (byte) 0);
+        for (int y = 1; y < height - 1; y++) {
+            dst[y * width] = 0;
+            dst[y * width + width - 1] = 0;
+        }
+    }
+}
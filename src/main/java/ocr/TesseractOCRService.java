@@ -1,187 +1,170 @@
 package ocr;
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.ConvolveOp;
-import java.awt.image.Kernel;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 
+import metrics.PipelineMetrics;
 import net.sourceforge.tess4j.ITessAPI;
 import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.Word;
 
 /**
  * Implementation of OCRService using Tesseract OCR engine.
  * Provides methods to extract text from images with preprocessing steps.
+ * <p>
+ * In cascade mode, a cheap fast pass runs first on a downscaled grayscale
+ * image with single-block segmentation. Its result is used when the mean word
+ * confidence reaches the threshold; otherwise the image goes through the full
+ * preprocessing chain and automatic page segmentation.
  */
 public class TesseractOCRService implements OCRService {
 
-    /**
-     * Extracts text from an image file using Tesseract OCR.
-     *
-     * @param imagePath path to the image file
-     * @return extracted text from the image
-     * @throws Exception if the image cannot be read or OCR fails
-     */
-    @Override
-    public String extractText(String imagePath) throws Exception {
-        BufferedImage input = ImageIO.read(new File(imagePath));
-        if (input == null) throw new IOException("Could not read image file: " + imagePath);
+    /** Default mean word confidence (0-100) the fast pass must reach */
+    public static final float DEFAULT_CONFIDENCE_THRESHOLD = 75f;
 
-        BufferedImage preprocessed = preprocessForOCR(input);
+    /** Default longest side of the image given to the fast pass */
+    public static final int DEFAULT_FAST_MAX_DIMENSION = 1200;
 
-        Tesseract tesseract = new Tesseract();
-        tesseract.setDatapath("tessdata"); // folder containing eng.traineddata
-        tesseract.setLanguage("eng");
-        tesseract.setOcrEngineMode(ITessAPI.TessOcrEngineMode.OEM_LSTM_ONLY);
-        tesseract.setPageSegMode(ITessAPI.TessPageSegMode.PSM_AUTO);
+    private final boolean cascade;
+    private final float confidenceThreshold;
+    private final int fastMaxDimension;
 
-        return tesseract.doOCR(preprocessed);
+    /**
+     * Creates a service that always runs the full preprocessing and recognition path.
+     */
+    public TesseractOCRService() {
+        this.cascade = false;
+        this.confidenceThreshold = DEFAULT_CONFIDENCE_THRESHOLD;
+        this.fastMaxDimension = DEFAULT_FAST_MAX_DIMENSION;
     }
 
     /**
-     * Preprocesses the image to enhance OCR accuracy.
+     * Creates a service in cascade mode.
      *
-     * @param src input image
-     * @return preprocessed image
+     * @param confidenceThreshold mean word confidence (0-100) at which the fast pass answers
+     * @param fastMaxDimension    longest side of the downscaled image used by the fast pass
      */
-    private BufferedImage preprocessForOCR(BufferedImage src) {
-        BufferedImage gray = toGrayscale(src);
-        int minDim = Math.min(gray.getWidth(), gray.getHeight());
-        if (minDim < 300) gray = scaleImage(gray, 2.0);
-        BufferedImage denoised = medianBlur(gray);
-        BufferedImage contrasted = contrastStretch(denoised);
-        BufferedImage binary = adaptiveThreshold(contrasted);
-        BufferedImage sharp = sharpenImage(binary);
-        return sharp;
+    public TesseractOCRService(float confidenceThreshold, int fastMaxDimension) {
+        this.cascade = true;
+        this.confidenceThreshold = confidenceThreshold;
+        this.fastMaxDimension = fastMaxDimension;
     }
 
     /**
-     * Converts an image to grayscale.
+     * Extracts text from an image file using Tesseract OCR.
      *
-     * @param src input image
-     * @return grayscale image
+     * @param imagePath path to the image file
+     * @return extracted text from the image
+     * @throws Exception if the image cannot be read or OCR fails
      */
-    private BufferedImage toGrayscale(BufferedImage src) {
-        BufferedImage gray = new BufferedImage(src.getWidth(), src.getHeight(),
-                BufferedImage.TYPE_BYTE_GRAY);
-        Graphics2D g = gray.createGraphics();
-        g.drawImage(src, 0, 0, null);
-        g.dispose();
-        return gray;
+    @Override
+    public String extractText(String imagePath) throws Exception {
+        return recognize(imagePath).text;
     }
 
     /**
-     * Scales an image by a given factor.
+     * Extracts text from an already decoded image using Tesseract OCR.
      *
-     * @param src   input image
-     * @param scale scaling factor
-     * @return scaled image
+     * @param image decoded image
+     * @return extracted text from the image
+     * @throws Exception if OCR fails
      */
-    private BufferedImage scaleImage(BufferedImage src, double scale) {
-        int w = (int) Math.round(src.getWidth() * scale);
-        int h = (int) Math.round(src.getHeight() * scale);
-        BufferedImage scaled = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
-        Graphics2D g = scaled.createGraphics();
-        g.drawImage(src, 0, 0, w, h, null);
-        g.dispose();
-        return scaled;
+    @Override
+    public String extractText(BufferedImage image) throws Exception {
+        return recognize(image).text;
     }
 
     /**
-     * Applies a simple median-like blur to reduce noise.
+     * Extracts text from an image file and reports which tier answered.
      *
-     * @param src input image
-     * @return denoised image
+     * @param imagePath path to the image file
+     * @return recognized text with its tier and fast-pass confidence
+     * @throws Exception if the image cannot be read or OCR fails
      */
-    private BufferedImage medianBlur(BufferedImage src) {
-        float[] kernel = {
-                1/9f, 1/9f, 1/9f,
-                1/9f, 1/9f, 1/9f,
-                1/9f, 1/9f, 1/9f
-        };
-        Kernel k = new Kernel(3, 3, kernel);
-        ConvolveOp op = new ConvolveOp(k);
-        return op.filter(src, null);
+    public OcrResult recognize(String imagePath) throws Exception {
+        BufferedImage input = PipelineMetrics.time(PipelineMetrics.IMAGE_DECODE, t -> {
+            BufferedImage image = ImageIO.read(new File(imagePath));
+            if (image == null) throw new IOException("Could not read image file: " + imagePath);
+            return image;
+        });
+        return recognize(input);
     }
 
     /**
-     * Enhances contrast of an image.
+     * Extracts text from an already decoded image and reports which tier answered.
      *
-     * @param src input image
-     * @return contrast-stretched image
+     * @param input decoded image
+     * @return recognized text with its tier and fast-pass confidence
+     * @throws Exception if OCR fails
      */
-    private BufferedImage contrastStretch(BufferedImage src) {
-        Raster r = src.getRaster();
-        int w = src.getWidth(), h = src.getHeight();
-        int[] pixels = new int[w * h];
-        r.getPixels(0, 0, w, h, pixels);
-
-        int min = 255, max = 0;
-        for (int p : pixels) {
-            if (p < min) min = p;
-            if (p > max) max = p;
+    public OcrResult recognize(BufferedImage input) throws Exception {
+        float fastConfidence = -1;
+        if (cascade) {
+            OcrResult fast = fastPass(input);
+            // Distribution of fast-pass confidence, to pick the threshold from real traffic
+            PipelineMetrics.recordValue(PipelineMetrics.OCR_FAST_CONFIDENCE, Math.round(fast.fastConfidence));
+            if (fast.fastConfidence >= confidenceThreshold) {
+                PipelineMetrics.increment(PipelineMetrics.OCR_TIER_FAST);
+                return fast;
+            }
+            fastConfidence = fast.fastConfidence;
         }
-        if (max == min) return src;
 
-        float scale = 255f / (max - min);
-        for (int i = 0; i < pixels.length; i++) {
-            int v = Math.round((pixels[i] - min) * scale);
-            pixels[i] = Math.min(255, Math.max(0, v));
-        }
+        BufferedImage preprocessed = ImagePreprocessor.preprocessForOCR(input);
+        Tesseract tesseract = newTesseract(ITessAPI.TessPageSegMode.PSM_AUTO);
 
-        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
-        out.getRaster().setPixels(0, 0, w, h, pixels);
-        return out;
+        String text = PipelineMetrics.time(PipelineMetrics.OCR_TESSERACT, t -> tesseract.doOCR(preprocessed));
+        PipelineMetrics.increment(PipelineMetrics.OCR_TIER_FULL);
+        return new OcrResult(text, OcrResult.Tier.FULL, fastConfidence);
     }
 
     /**
-     * Applies adaptive thresholding to convert grayscale to binary image.
+     * Runs the cheap first tier: grayscale, downscale, single-block recognition.
      *
-     * @param src input grayscale image
-     * @return binary image
+     * @param input decoded image
+     * @return words joined by spaces, with their mean confidence (0 if none were found)
+     * @throws Exception if OCR fails
      */
-    private BufferedImage adaptiveThreshold(BufferedImage src) {
-        int w = src.getWidth();
-        int h = src.getHeight();
-        Raster raster = src.getRaster();
-        int[] pixels = new int[w * h];
-        raster.getPixels(0, 0, w, h, pixels);
-
-        int sum = 0;
-        for (int v : pixels) sum += v;
-        int mean = sum / pixels.length;
-
-        BufferedImage bin = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY);
-        WritableRaster wr = bin.getRaster();
-        int idx = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int val = (pixels[idx++] > mean) ? 255 : 0;
-                wr.setSample(x, y, 0, val);
+    private OcrResult fastPass(BufferedImage input) throws Exception {
+        return PipelineMetrics.time(PipelineMetrics.OCR_FAST_PASS, t -> {
+            BufferedImage gray = ImagePreprocessor.downscaleToFit(ImagePreprocessor.toGrayscale(input),
+                    fastMaxDimension);
+            Tesseract tesseract = newTesseract(ITessAPI.TessPageSegMode.PSM_SINGLE_BLOCK);
+            List<Word> words = tesseract.getWords(gray, ITessAPI.TessPageIteratorLevel.RIL_WORD);
+
+            // Confidence is weighted by word length so stray one-letter noise counts for little
+            StringBuilder text = new StringBuilder();
+            double weighted = 0;
+            int chars = 0;
+            for (Word word : words) {
+                String w = word.getText().trim();
+                if (w.isEmpty()) continue;
+                if (text.length() > 0) text.append(' ');
+                text.append(w);
+                weighted += (double) word.getConfidence() * w.length();
+                chars += w.length();
             }
-        }
-        return bin;
+            float confidence = chars == 0 ? 0f : (float) (weighted / chars);
+            return new OcrResult(text.toString(), OcrResult.Tier.FAST, confidence);
+        });
     }
 
     /**
-     * Sharpens the image to improve OCR accuracy.
+     * Creates a Tesseract instance configured for English LSTM recognition.
      *
-     * @param src input image
-     * @return sharpened image
+     * @param pageSegMode Tesseract page segmentation mode
+     * @return configured Tesseract instance
      */
-    private BufferedImage sharpenImage(BufferedImage src) {
-        float[] sharpKernel = {
-                0.f, -1.f, 0.f,
-                -1.f, 5.f, -1.f,
-                0.f, -1.f, 0.f
-        };
-        Kernel kernel = new Kernel(3, 3, sharpKernel);
-        ConvolveOp op = new ConvolveOp(kernel);
-        return op.filter(src, null);
+    private Tesseract newTesseract(int pageSegMode) {
+        Tesseract tesseract = new Tesseract();
+        tesseract.setDatapath("tessdata"); // folder containing eng.traineddata
+        tesseract.setLanguage("eng");
+        tesseract.setOcrEngineMode(ITessAPI.TessOcrEngineMode.OEM_LSTM_ONLY);
+        tesseract.setPageSegMode(pageSegMode);
+        return tesseract;
     }
-}
\ No newline at end of file
+}
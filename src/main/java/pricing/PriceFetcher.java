@@ -8,9 +8,14 @@ import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
+import metrics.PipelineMetrics;
+import metrics.StageTimer;
+
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 /**
  * PriceFetcher uses Selenium WebDriver to fetch product prices from multiple
@@ -21,8 +26,65 @@ import java.util.Map;
  */
 public class PriceFetcher {
 
+    public static final String AMAZON = "Amazon";
+    public static final String ADKOMSAL = "Adkomsal";
+    public static final String APPLE_STORE = "Apple Store";
+    public static final String ISTYLE = "iStyle";
+
+    /** Default timeout duration for WebDriver waits */
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(15);
+
+    /** Live site base URLs, keyed by store name */
+    public static final Map<String, String> DEFAULT_BASE_URLS = Map.of(
+            AMAZON, "https://www.amazon.ca",
+            ADKOMSAL, "https://adkomsal.com",
+            APPLE_STORE, "https://www.apple.com",
+            ISTYLE, "https://istyle.com.lb");
+
+    /** Base URL of each store, without trailing slash */
+    private final Map<String, String> baseUrls;
+
+    /** Creates the WebDriver used for one {@link #fetchPrices(String)} call */
+    private final Supplier<WebDriver> driverFactory;
+
     /** Timeout duration for WebDriver waits */
-    private static final Duration TIMEOUT = Duration.ofSeconds(15);
+    private final Duration timeout;
+
+    /** Optional per-store rate limits, keyed by store name */
+    private volatile Map<String, TokenBucket> rateLimits = Map.of();
+
+    /**
+     * Creates a PriceFetcher that scrapes the live store sites.
+     */
+    public PriceFetcher() {
+        this(DEFAULT_BASE_URLS, PriceFetcher::getHeadlessDriver, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a PriceFetcher against custom store hosts, e.g. local stand-ins
+     * serving recorded pages.
+     *
+     * @param baseUrls      base URL per store name; missing stores use the live site
+     * @param driverFactory creates the WebDriver for each fetch
+     * @param timeout       timeout for WebDriver waits
+     */
+    public PriceFetcher(Map<String, String> baseUrls, Supplier<WebDriver> driverFactory, Duration timeout) {
+        Map<String, String> urls = new HashMap<>(DEFAULT_BASE_URLS);
+        urls.putAll(baseUrls);
+        this.baseUrls = urls;
+        this.driverFactory = driverFactory;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Limits how often each store is hit across all calls on this instance.
+     * Stores without a bucket are not limited.
+     *
+     * @param rateLimits token bucket per store name
+     */
+    public void setRateLimits(Map<String, TokenBucket> rateLimits) {
+        this.rateLimits = Map.copyOf(rateLimits);
+    }
 
     /**
      * Fetches prices from multiple sites for the given product name.
@@ -32,18 +94,48 @@ public class PriceFetcher {
      */
     public Map<String, StoreResult> fetchPrices(String productName) {
         Map<String, StoreResult> prices = new HashMap<>();
-        WebDriver driver = getHeadlessDriver();
+        WebDriver driver = PipelineMetrics.time(PipelineMetrics.SCRAPE_DRIVER_START, t -> driverFactory.get());
         try {
-            prices.put("Amazon", new StoreResult(fetchAmazonPrice(driver, productName), driver.getCurrentUrl()));
-            prices.put("Adkomsal", new StoreResult(fetchAdkomsalPrice(driver, productName), driver.getCurrentUrl()));
-            prices.put("Apple Store", new StoreResult(fetchAppleStorePrice(driver, productName), driver.getCurrentUrl()));
-            prices.put("iStyle", new StoreResult(fetchIstylePrice(driver, productName), driver.getCurrentUrl()));
+            prices.put(AMAZON, fetchTimed(AMAZON, driver, productName, this::fetchAmazonPrice));
+            prices.put(ADKOMSAL, fetchTimed(ADKOMSAL, driver, productName, this::fetchAdkomsalPrice));
+            prices.put(APPLE_STORE, fetchTimed(APPLE_STORE, driver, productName, this::fetchAppleStorePrice));
+            prices.put(ISTYLE, fetchTimed(ISTYLE, driver, productName, this::fetchIstylePrice));
         } finally {
             driver.quit();
         }
         return prices;
     }
 
+    /**
+     * Runs one store fetcher, recording its latency and outcome in {@link PipelineMetrics}.
+     *
+     * @param store       store name used as the metrics label
+     * @param driver      WebDriver instance
+     * @param productName Product to search for
+     * @param fetcher     store-specific fetch method
+     * @return StoreResult holding the price string and the page the driver ended on
+     */
+    private StoreResult fetchTimed(String store, WebDriver driver, String productName,
+                                   BiFunction<WebDriver, String, String> fetcher) {
+        TokenBucket bucket = rateLimits.get(store);
+        if (bucket != null) {
+            try {
+                bucket.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                PipelineMetrics.scrapeOutcome(store, false);
+                return new StoreResult("Error: interrupted while rate limited", driver.getCurrentUrl());
+            }
+        }
+        try (StageTimer t = PipelineMetrics.start(PipelineMetrics.SCRAPE_PREFIX + store)) {
+            String price = fetcher.apply(driver, productName);
+            boolean ok = price != null && !price.startsWith("Error");
+            if (!ok) t.fail();
+            PipelineMetrics.scrapeOutcome(store, ok);
+            return new StoreResult(price, driver.getCurrentUrl());
+        }
+    }
+
     /**
      * Fetches the first product price from Amazon search results.
      *
@@ -53,10 +145,10 @@ public class PriceFetcher {
      */
     public String fetchAmazonPrice(WebDriver driver, String productName) {
         try {
-            String url = "https://www.amazon.ca/s?k=" + encode(productName)
+            String url = baseUrls.get(AMAZON) + "/s?k=" + encode(productName)
                     + "&language=en_US&currency=CAD&ref=nb_sb_noss_1";
             driver.get(url);
-            WebDriverWait wait = new WebDriverWait(driver, TIMEOUT);
+            WebDriverWait wait = new WebDriverWait(driver, timeout);
             wait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("div.s-main-slot.s-result-list")));
             WebElement priceWhole = wait.until(ExpectedConditions.visibilityOfElementLocated(
                     By.cssSelector("span.a-price-whole")));
@@ -75,10 +167,10 @@ public class PriceFetcher {
      */
     public String fetchAdkomsalPrice(WebDriver driver, String productName) {
         try {
-            String url = "https://adkomsal.com/?s=" + encode(productName) + "&post_type=product";
+            String url = baseUrls.get(ADKOMSAL) + "/?s=" + encode(productName) + "&post_type=product";
             driver.get(url);
 
-            WebDriverWait wait = new WebDriverWait(driver, TIMEOUT);
+            WebDriverWait wait = new WebDriverWait(driver, timeout);
             wait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector("ul.products li.product")));
 
             WebElement firstItemLink = wait.until(ExpectedConditions.elementToBeClickable(
@@ -104,10 +196,10 @@ public class PriceFetcher {
      */
     public String fetchAppleStorePrice(WebDriver driver, String productName) {
         try {
-            String url = "https://www.apple.com/us/search/" + encode(productName) + "?src=globalnav";
+            String url = baseUrls.get(APPLE_STORE) + "/us/search/" + encode(productName) + "?src=globalnav";
             driver.get(url);
 
-            WebDriverWait wait = new WebDriverWait(driver, TIMEOUT);
+            WebDriverWait wait = new WebDriverWait(driver, timeout);
             WebElement priceElem = wait.until(ExpectedConditions.visibilityOfElementLocated(
                     By.cssSelector("span.rf-producttile-pricecurrent")));
 
@@ -126,10 +218,10 @@ public class PriceFetcher {
      */
     public String fetchIstylePrice(WebDriver driver, String productName) {
         try {
-            String url = "https://istyle.com.lb/search?type=product&q=" + encode(productName);
+            String url = baseUrls.get(ISTYLE) + "/search?type=product&q=" + encode(productName);
             driver.get(url);
 
-            WebDriverWait wait = new WebDriverWait(driver, TIMEOUT);
+            WebDriverWait wait = new WebDriverWait(driver, timeout);
             WebElement priceElem = wait.until(ExpectedConditions.visibilityOfElementLocated(
                     By.cssSelector("div.fbt_cartCSS.price.price-product-GA-42167675060322.price-product")));
             return priceElem.getAttribute("data-prodprice");
@@ -143,7 +235,7 @@ public class PriceFetcher {
      *
      * @return WebDriver instance
      */
-    private WebDriver getHeadlessDriver() {
+    private static WebDriver getHeadlessDriver() {
         System.setProperty("webdriver.chrome.driver", "/opt/homebrew/bin/chromedriver");
         System.setProperty("webdriver.manager.disable", "true");
         System.setProperty("webdriver.http.factory", "jdk-http-client"); // suppress CDP warnings
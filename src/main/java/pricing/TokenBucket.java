@@ -0,0 +1,55 @@
+package pricing;
+
+/**
+ * Token-bucket rate limiter used to cap how often a store is scraped.
+ * <p>
+ * Holds up to {@code burst} tokens and refills at {@code ratePerSecond}.
+ * Callers that find the bucket empty reserve a future token and sleep until
+ * it is due, so waiting callers are served in arrival order.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Constructs a new TokenBucket, initially full.
+     *
+     * @param ratePerSecond sustained number of permits per second
+     * @param burst         maximum number of permits available at once
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        }
+        this.capacity = burst;
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes one permit, blocking until it is available.
+     *
+     * @throws InterruptedException if interrupted while waiting; the permit stays consumed
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
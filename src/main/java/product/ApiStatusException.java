@@ -0,0 +1,33 @@
+package product;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the {@code /products} API answers with a non-success status.
+ */
+public class ApiStatusException extends IOException {
+
+    /** HTTP status code returned by the API */
+    public final int status;
+
+    /**
+     * Constructs a new ApiStatusException.
+     *
+     * @param request short description of the request, e.g. {@code POST /products}
+     * @param status  HTTP status code returned
+     */
+    public ApiStatusException(String request, int status) {
+        super(request + " failed with status " + status);
+        this.status = status;
+    }
+
+    /**
+     * Whether sending the same request again may succeed: server errors,
+     * timeouts and throttling.
+     *
+     * @return true if the request should be retried
+     */
+    public boolean isRetryable() {
+        return status >= 500 || status == 408 || status == 429;
+    }
+}
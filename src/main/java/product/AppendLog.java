@@ -0,0 +1,172 @@
+package product;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Text file of lines appended by one or more processes, read back
+ * incrementally and occasionally compacted by rewriting it.
+ * <p>
+ * Appends, reads and compaction hold an exclusive lock on a sibling
+ * {@code .lock} file, so a compaction never loses a line another process
+ * appends meanwhile. A reader notices that the file was replaced by a
+ * compaction and reads it again from the start. Use one instance per file
+ * and process; callers synchronize access to it.
+ */
+final class AppendLog {
+
+    private final Path file;
+    private final Path lockFile;
+
+    /** File offset up to which complete lines have been read */
+    private long readOffset;
+    /** Identity of the file read so far, to notice a replacement; null where unsupported */
+    private Object fileKey;
+
+    /**
+     * Creates the log; nothing is read until {@link #readNew(Consumer, Runnable)}.
+     *
+     * @param file log file, created on the first append if missing
+     * @throws IOException if the parent directory cannot be created
+     */
+    AppendLog(Path file) throws IOException {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+    }
+
+    /** The log file */
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Reads what other processes appended, then appends one line. The new
+     * line is not passed back by later reads; the caller applies it itself
+     * once this returns.
+     *
+     * @param line  line without line breaks
+     * @param read  receives each line not read yet, as for {@link #readNew(Consumer, Runnable)}
+     * @param reset discards what earlier reads produced
+     * @throws IOException if the file cannot be read or the line cannot be written
+     */
+    void append(String line, Consumer<String> read, Runnable reset) throws IOException {
+        try (FileChannel lock = lock()) {
+            readLocked(read, reset);
+            String record = line + "\n";
+            // Whatever is left unread under the lock is a line torn by a crash; end it so ours stays intact
+            if (Files.exists(file) && Files.size(file) > readOffset) record = "\n" + record;
+            Files.write(file, record.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            fileKey = attrs.fileKey();
+            readOffset = attrs.size();
+        }
+    }
+
+    /**
+     * Passes the complete lines appended since the last read, by this or any
+     * other process. If the file was compacted meanwhile, {@code reset} runs
+     * first and every line of the new file is passed.
+     *
+     * @param line  receives each non-empty line
+     * @param reset discards what earlier reads produced
+     * @throws IOException if the file cannot be read
+     */
+    void readNew(Consumer<String> line, Runnable reset) throws IOException {
+        try (FileChannel lock = lock()) {
+            readLocked(line, reset);
+        }
+    }
+
+    /**
+     * Reads what is new, then replaces the file with the lines returned by
+     * {@code contents}, through a temporary file and an atomic rename.
+     *
+     * @param line     receives each line not read yet, as for {@link #readNew(Consumer, Runnable)}
+     * @param reset    discards what earlier reads produced
+     * @param contents called after the read, returns the lines of the compacted file
+     * @throws IOException if the file cannot be read or replaced
+     */
+    void compact(Consumer<String> line, Runnable reset, Supplier<Iterable<String>> contents) throws IOException {
+        try (FileChannel lock = lock()) {
+            readLocked(line, reset);
+            Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (String l : contents.get()) {
+                    out.write(l);
+                    out.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            fileKey = attrs.fileKey();
+            readOffset = attrs.size();
+        }
+    }
+
+    private void readLocked(Consumer<String> line, Runnable reset) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        boolean replaced = (fileKey != null && !fileKey.equals(attrs.fileKey())) || attrs.size() < readOffset;
+        if (replaced) {
+            reset.run();
+            readOffset = 0;
+        }
+        fileKey = attrs.fileKey();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= readOffset) return;
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, size - readOffset));
+            while (buf.hasRemaining() && channel.read(buf, readOffset + buf.position()) > 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            byte[] bytes = buf.array();
+            int end = buf.position();
+            int lastNewline = -1;
+            for (int i = end - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') {
+                    lastNewline = i;
+                    break;
+                }
+            }
+            // A line torn by a crash mid-append is left unread; the next append ends it
+            if (lastNewline < 0) return;
+            String text = new String(bytes, 0, lastNewline, StandardCharsets.UTF_8);
+            for (String l : text.split("\n")) {
+                if (!l.isEmpty()) line.accept(l);
+            }
+            readOffset += lastNewline + 1;
+        }
+    }
+
+    /**
+     * Takes the exclusive lock; closing the returned channel releases it.
+     */
+    private FileChannel lock() throws IOException {
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package product;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts product lookups per normalized title, used to prioritize background
+ * price refreshes.
+ * <p>
+ * When backed by a file, every lookup appends a {@code title<TAB>1} line, so
+ * counts add up across CLI runs and across processes sharing the file, and
+ * {@link #close()} compacts the file to one {@code title<TAB>count} line per
+ * title. Lines appended by other processes are read on the next
+ * {@link #record(String)} or {@link #reload()}; {@link #count(String)} never
+ * touches the file. Without a file, counts cover this process only.
+ */
+public class LookupLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(LookupLog.class);
+
+    private final AppendLog file;
+    private final Map<String, Long> counts = new HashMap<>();
+
+    /**
+     * Creates an in-memory log covering this process only.
+     */
+    public LookupLog() {
+        this.file = null;
+    }
+
+    /**
+     * Opens a log persisted to a file, counting the lookups already in it.
+     *
+     * @param file log file, created on the first lookup if missing
+     * @throws IOException if the existing file cannot be read
+     */
+    public LookupLog(Path file) throws IOException {
+        this.file = new AppendLog(file);
+        this.file.readNew(this::apply, counts::clear);
+    }
+
+    /**
+     * Records one lookup. A write failure is logged and the lookup is not counted.
+     *
+     * @param title normalized product title, without line breaks
+     */
+    public synchronized void record(String title) {
+        if (file != null) {
+            try {
+                file.append(title + "\t1", this::apply, counts::clear);
+            } catch (IOException e) {
+                log.warn("Could not record lookup of {}: {}", title, e.getMessage());
+                return;
+            }
+        }
+        counts.merge(title, 1L, Long::sum);
+    }
+
+    /**
+     * Counts the lookups other processes recorded since the last read.
+     */
+    public synchronized void reload() {
+        if (file == null) return;
+        try {
+            file.readNew(this::apply, counts::clear);
+        } catch (IOException e) {
+            log.warn("Could not read lookup log {}: {}", file.file(), e.getMessage());
+        }
+    }
+
+    /**
+     * Number of recorded lookups of a title, as of the last read of the file.
+     *
+     * @param title normalized product title
+     * @return lookup count
+     */
+    public synchronized long count(String title) {
+        return counts.getOrDefault(title, 0L);
+    }
+
+    /**
+     * Rewrites the file with one line per title.
+     *
+     * @throws IOException if the file cannot be compacted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (file == null) return;
+        file.compact(this::apply, counts::clear, () -> {
+            List<String> lines = new ArrayList<>(counts.size());
+            counts.forEach((title, count) -> lines.add(title + '\t' + count));
+            return lines;
+        });
+    }
+
+    /**
+     * Counts one line: {@code title<TAB>count}, or a bare title as written
+     * before counts were compacted.
+     */
+    private void apply(String line) {
+        int tab = line.lastIndexOf('\t');
+        if (tab < 0) {
+            counts.merge(line, 1L, Long::sum);
+            return;
+        }
+        try {
+            counts.merge(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)), Long::sum);
+        } catch (NumberFormatException e) {
+            // Line torn by a crash mid-append, ignore
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package product;
+
+import metrics.PipelineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pricing.PriceFetcher;
+import pricing.StoreResult;
+import pricing.TokenBucket;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps stored prices fresh by re-scraping products in the background.
+ * <p>
+ * At every scan, all stored products are read from the API and queued by
+ * priority: how long since the price was last refreshed, multiplied by how
+ * often the product has been looked up ({@link LookupLog}). A fixed number of
+ * workers take the most urgent products, scrape them through a shared
+ * {@link PriceFetcher} whose stores are rate limited by token buckets, and
+ * write any lower price back through {@link ProductIdentifier#submit(ProductWrite)}.
+ * Products refreshed less than {@code minAge} ago are skipped. A refresh that
+ * finds no lower price writes nothing to the API, so refresh times are kept in
+ * a {@link RefreshLog}, which a file-backed log carries over to later runs.
+ */
+public class PriceRefresher implements AutoCloseable {
+
+    /** Default sustained scrape rate per store (one page every 5 seconds) */
+    public static final double DEFAULT_STORE_RATE = 0.2;
+
+    /** Default number of scrapes a store may take in a burst */
+    public static final int DEFAULT_STORE_BURST = 2;
+
+    private static final Logger log = LoggerFactory.getLogger(PriceRefresher.class);
+
+    private final PriceFetcher fetcher;
+    private final int concurrency;
+    private final Duration scanInterval;
+    private final Duration minAge;
+
+    private final PriorityBlockingQueue<Candidate> queue = new PriorityBlockingQueue<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final RefreshLog refreshLog;
+
+    private ScheduledExecutorService scanner;
+    private ExecutorService workers;
+
+    /**
+     * Creates a refresher that remembers refresh times for this process only;
+     * call {@link #start()} to begin.
+     *
+     * @param fetcher      fetcher used for every scrape, typically rate limited
+     * @param concurrency  number of products scraped at the same time
+     * @param scanInterval time between two reads of the stored products
+     * @param minAge       products refreshed more recently than this are skipped
+     */
+    public PriceRefresher(PriceFetcher fetcher, int concurrency, Duration scanInterval, Duration minAge) {
+        this(fetcher, concurrency, scanInterval, minAge, new RefreshLog());
+    }
+
+    /**
+     * Creates a refresher; call {@link #start()} to begin.
+     *
+     * @param fetcher      fetcher used for every scrape, typically rate limited
+     * @param concurrency  number of products scraped at the same time
+     * @param scanInterval time between two reads of the stored products
+     * @param minAge       products refreshed more recently than this are skipped
+     * @param refreshLog   where refresh times are kept; closed by {@link #close()}
+     */
+    public PriceRefresher(PriceFetcher fetcher, int concurrency, Duration scanInterval, Duration minAge,
+            RefreshLog refreshLog) {
+        this.fetcher = fetcher;
+        this.refreshLog = refreshLog;
+        this.concurrency = concurrency;
+        this.scanInterval = scanInterval;
+        this.minAge = minAge;
+    }
+
+    /**
+     * Creates a live-site PriceFetcher limited to {@link #DEFAULT_STORE_RATE}
+     * scrapes per second per store.
+     *
+     * @return rate-limited fetcher
+     */
+    public static PriceFetcher rateLimitedFetcher() {
+        PriceFetcher fetcher = new PriceFetcher();
+        Map<String, TokenBucket> limits = new HashMap<>();
+        for (String store : PriceFetcher.DEFAULT_BASE_URLS.keySet()) {
+            limits.put(store, new TokenBucket(DEFAULT_STORE_RATE, DEFAULT_STORE_BURST));
+        }
+        fetcher.setRateLimits(limits);
+        return fetcher;
+    }
+
+    /**
+     * Starts the periodic scan and the workers.
+     */
+    public synchronized void start() {
+        if (scanner != null) return;
+        scanner = Executors.newSingleThreadScheduledExecutor(daemon("price-refresh-scan"));
+        workers = Executors.newFixedThreadPool(concurrency, daemon("price-refresh-worker"));
+        scanner.scheduleWithFixedDelay(this::scan, 0, scanInterval.toMillis(), TimeUnit.MILLISECONDS);
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(this::work);
+        }
+        log.info("Price refresher started: {} workers, scan every {}, min age {}", concurrency, scanInterval, minAge);
+    }
+
+    /**
+     * Stops scanning, interrupts in-flight refreshes and closes the refresh log.
+     */
+    @Override
+    public synchronized void close() {
+        if (scanner != null) {
+            scanner.shutdownNow();
+            workers.shutdownNow();
+            scanner = null;
+            workers = null;
+            queue.clear();
+        }
+        try {
+            refreshLog.close();
+        } catch (IOException e) {
+            log.warn("Could not compact refresh log: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Whether the refresher has been started and not closed since.
+     *
+     * @return true while scanning
+     */
+    public synchronized boolean isRunning() {
+        return scanner != null;
+    }
+
+    /**
+     * Number of products currently waiting for a refresh.
+     *
+     * @return queue length
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Reads all stored products and rebuilds the queue with fresh priorities.
+     */
+    void scan() {
+        List<Map<String, Object>> products;
+        try {
+            products = ProductIdentifier.listProducts();
+        } catch (Exception e) {
+            log.warn("Price refresh scan failed: {}", e.getMessage());
+            return;
+        }
+
+        Instant now = Instant.now();
+        Map<String, Instant> lastRefreshed = refreshLog.snapshot();
+        ProductIdentifier.reloadLookupCounts();
+        queue.clear();
+        for (Map<String, Object> product : products) {
+            Object id = product.get("id");
+            Object title = product.get("title");
+            Object rawPrice = product.get("price");
+            Double price = rawPrice == null ? null : ProductIdentifier.parsePrice(rawPrice.toString());
+            if (id == null || title == null || price == null || inFlight.contains(id.toString())) continue;
+
+            Instant refreshed = latest(storedTimestamp(product), lastRefreshed.get(id.toString()));
+            Duration age = Duration.between(refreshed, now);
+            if (age.compareTo(minAge) < 0) continue;
+
+            long lookups = ProductIdentifier.lookupCount(title.toString());
+            double priority = age.getSeconds() * (1.0 + lookups);
+            queue.add(new Candidate(id.toString(), title.toString(), price, priority));
+        }
+        log.debug("Price refresh scan queued {} of {} products", queue.size(), products.size());
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Candidate candidate;
+            try {
+                candidate = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!inFlight.add(candidate.id)) continue;
+            try {
+                refresh(candidate);
+            } finally {
+                refreshLog.record(candidate.id, Instant.now());
+                inFlight.remove(candidate.id);
+            }
+        }
+    }
+
+    /**
+     * Scrapes one product and stores the best price if it is lower than the stored one.
+     *
+     * @param candidate product to refresh
+     */
+    void refresh(Candidate candidate) {
+        try {
+            PipelineMetrics.time(PipelineMetrics.REFRESH, t -> {
+                Map<String, StoreResult> prices = fetcher.fetchPrices(candidate.title);
+                Map.Entry<String, StoreResult> best = ProductIdentifier.findBestEntry(prices);
+                if (best == null) {
+                    t.fail();
+                    PipelineMetrics.increment(PipelineMetrics.REFRESH_FAILED);
+                    return null;
+                }
+
+                double bestPrice = ProductIdentifier.parsePrice(best.getValue().price);
+                if (bestPrice < candidate.storedPrice) {
+                    ProductIdentifier.submit(
+                            ProductWrite.update(candidate.id, candidate.title, bestPrice, best.getValue().url));
+                    PipelineMetrics.increment(PipelineMetrics.REFRESH_UPDATED);
+                    log.info("Refreshed {}: {} -> {} at {}", candidate.title, candidate.storedPrice, bestPrice,
+                            best.getKey());
+                } else {
+                    PipelineMetrics.increment(PipelineMetrics.REFRESH_UNCHANGED);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            PipelineMetrics.increment(PipelineMetrics.REFRESH_FAILED);
+            log.warn("Refreshing {} failed: {}", candidate.title, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the product's stored timestamp, written by the API as a local date-time.
+     *
+     * @param product product fields
+     * @return timestamp, or the epoch if missing or unreadable
+     */
+    private static Instant storedTimestamp(Map<String, Object> product) {
+        Object ts = product.get("timestamp");
+        if (ts == null) return Instant.EPOCH;
+        try {
+            return LocalDateTime.parse(ts.toString()).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (Exception e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private static Instant latest(Instant a, Instant b) {
+        if (b == null) return a;
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * A product waiting for a refresh; the highest priority is taken first.
+     */
+    static class Candidate implements Comparable<Candidate> {
+
+        final String id;
+        final String title;
+        final double storedPrice;
+        final double priority;
+
+        Candidate(String id, String title, double storedPrice, double priority) {
+            this.id = id;
+            this.title = title;
+            this.storedPrice = storedPrice;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(other.priority, priority);
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package product;
 
 import okhttp3.*;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import metrics.PipelineMetrics;
 import pricing.PriceFetcher;
 
 import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Handles product lookup, price scraping, and database updates.
@@ -23,10 +26,59 @@ public class ProductIdentifier {
 
     private static final OkHttpClient client = new OkHttpClient();
     private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JavaType PRODUCT_LIST_TYPE = mapper.getTypeFactory()
+            .constructCollectionType(java.util.List.class,
+                    mapper.getTypeFactory().constructMapType(java.util.Map.class, String.class, Object.class));
 
     // Change this to point to your API base if needed
     private static String API_BASE = "http://localhost:8080";
 
+    private static Supplier<PriceFetcher> priceFetcherFactory = PriceFetcher::new;
+
+    private static volatile WriteBehindQueue writeBehind;
+
+    /** Lookups per normalized product text, used to prioritize background refreshes */
+    private static volatile LookupLog lookups = new LookupLog();
+
+    /**
+     * Points all database calls at another PriceCacheAPI instance.
+     *
+     * @param apiBase base URL of the API, without trailing slash
+     */
+    public static void setApiBase(String apiBase) {
+        API_BASE = apiBase;
+    }
+
+    /**
+     * Routes product saves and price updates through a write-behind queue, or
+     * back to synchronous requests when null.
+     *
+     * @param queue journal-backed queue, or null
+     */
+    public static void setWriteBehind(WriteBehindQueue queue) {
+        writeBehind = queue;
+    }
+
+    /**
+     * Replaces where lookups are counted, e.g. with a file-backed log so
+     * lookup frequency survives across CLI runs.
+     *
+     * @param log lookup log
+     */
+    public static void setLookupLog(LookupLog log) {
+        lookups = log;
+    }
+
+    /**
+     * Replaces how the PriceFetcher used for scraping is created, e.g. to scrape
+     * local stand-ins of the store sites.
+     *
+     * @param factory creates a PriceFetcher for each lookup
+     */
+    public static void setPriceFetcherFactory(Supplier<PriceFetcher> factory) {
+        priceFetcherFactory = factory;
+    }
+
     /**
      * Looks up a product by its name or barcode, scrapes prices if not found in DB,
      * saves only the best price, and prints the best store price.
@@ -35,7 +87,8 @@ public class ProductIdentifier {
      * @throws Exception if HTTP requests or JSON parsing fails
      */
     public static void runProductLookup(String extractedText) throws Exception {
-        extractedText = extractedText.replaceAll("\\s+", " ").trim();
+        extractedText = normalize(extractedText);
+        recordLookup(extractedText);
         System.out.println("Searching for product: " + extractedText);
 
         // ----------- Step 1: check database -----------
@@ -45,18 +98,23 @@ public class ProductIdentifier {
                 .get()
                 .build();
 
-        Response getResponse = client.newCall(getRequest).execute();
-        String body = getResponse.body().string();
+        String body = PipelineMetrics.time(PipelineMetrics.DB_LOOKUP, t -> {
+            try (Response getResponse = client.newCall(getRequest).execute()) {
+                return getResponse.body().string();
+            }
+        });
 
         if (!body.equals("[]") && !body.isEmpty()) {
+            PipelineMetrics.increment(PipelineMetrics.DB_HIT);
             System.out.println("\nProduct already in database:");
             System.out.println("Best price: " + getBestPriceFromDB(body));
             return;
         }
+        PipelineMetrics.increment(PipelineMetrics.DB_MISS);
 
         // ----------- Step 2: scrape prices -----------
         System.out.println("Product not found in DB — scraping...");
-        PriceFetcher fetcher = new PriceFetcher();
+        PriceFetcher fetcher = priceFetcherFactory.get();
         Map<String, pricing.StoreResult> prices = fetcher.fetchPrices(extractedText);
 
         System.out.println("\nScraped results:");
@@ -65,23 +123,7 @@ public class ProductIdentifier {
         }
 
         // ----------- Step 3: find BEST store only -----------
-        Map.Entry<String, pricing.StoreResult> bestEntry = null;
-        double bestValue = Double.MAX_VALUE;
-
-        for (Map.Entry<String, pricing.StoreResult> entry : prices.entrySet()) {
-            String priceStr = entry.getValue().price.replaceAll("[^0-9.]", "");
-            if (priceStr.isEmpty())
-                continue;
-
-            try {
-                double value = Double.parseDouble(priceStr);
-                if (value < bestValue) {
-                    bestValue = value;
-                    bestEntry = entry;
-                }
-            } catch (Exception ignored) {
-            }
-        }
+        Map.Entry<String, pricing.StoreResult> bestEntry = findBestEntry(prices);
 
         if (bestEntry == null) {
             System.out.println("No valid prices found to store.");
@@ -92,23 +134,10 @@ public class ProductIdentifier {
         pricing.StoreResult bestData = bestEntry.getValue();
         String bestStore = bestEntry.getKey();
 
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("title", extractedText);
-        payload.put("description", "");
-        payload.put("price", Double.parseDouble(bestData.price.replaceAll("[^0-9.]", "")));
-        payload.put("sourceUrl", bestData.url);
-
-        String json = mapper.writeValueAsString(payload);
-
-        Request post = new Request.Builder()
-                .url(API_BASE + "/products")
-                .post(RequestBody.create(json, MediaType.parse("application/json")))
-                .build();
-
-        client.newCall(post).execute();
+        boolean queued = submit(ProductWrite.save(extractedText, parsePrice(bestData.price), bestData.url));
 
         // ----------- Step 5: show best scraped price -----------
-        System.out.println("\nSaved BEST PRICE ONLY:");
+        System.out.println(queued ? "\nQueued BEST PRICE ONLY for saving:" : "\nSaved BEST PRICE ONLY:");
         System.out.println(bestStore + " — " + bestData.price);
     }
 
@@ -119,7 +148,8 @@ public class ProductIdentifier {
      * @throws Exception if HTTP requests or JSON parsing fails
      */
     public static void runProductLookupToEditPrice(String extractedText) throws Exception {
-        extractedText = extractedText.replaceAll("\\s+", " ").trim();
+        extractedText = normalize(extractedText);
+        recordLookup(extractedText);
         System.out.println("Searching for product: " + extractedText);
 
         // ----------- Step 1: check database -----------
@@ -129,17 +159,19 @@ public class ProductIdentifier {
                 .get()
                 .build();
 
-        Response getResponse = client.newCall(getRequest).execute();
-        String body = getResponse.body().string();
+        String body = PipelineMetrics.time(PipelineMetrics.DB_LOOKUP, t -> {
+            try (Response getResponse = client.newCall(getRequest).execute()) {
+                return getResponse.body().string();
+            }
+        });
 
         Double dbPrice = null;
         String recordId = null;
 
         if (!body.equals("[]") && !body.isEmpty()) {
+            PipelineMetrics.increment(PipelineMetrics.DB_HIT);
             // Parse JSON
-            java.util.List<java.util.Map<String, Object>> list = mapper.readValue(body, mapper.getTypeFactory()
-                    .constructCollectionType(java.util.List.class,
-                            mapper.getTypeFactory().constructMapType(java.util.Map.class, String.class, Object.class)));
+            java.util.List<java.util.Map<String, Object>> list = parseProducts(body);
 
             java.util.Map<String, Object> item = list.get(0);
             dbPrice = Double.parseDouble(item.get("price").toString());
@@ -147,11 +179,13 @@ public class ProductIdentifier {
 
             System.out.println("\nProduct already in database:");
             System.out.println("Current DB price: " + dbPrice);
+        } else {
+            PipelineMetrics.increment(PipelineMetrics.DB_MISS);
         }
 
         // ----------- Step 2: scrape prices -----------
         System.out.println("Scraping websites for updated prices...");
-        PriceFetcher fetcher = new PriceFetcher();
+        PriceFetcher fetcher = priceFetcherFactory.get();
         Map<String, pricing.StoreResult> prices = fetcher.fetchPrices(extractedText);
 
         System.out.println("\nScraped results:");
@@ -160,23 +194,7 @@ public class ProductIdentifier {
         }
 
         // ----------- Step 3: find BEST store only -----------
-        Map.Entry<String, pricing.StoreResult> bestEntry = null;
-        double bestValue = Double.MAX_VALUE;
-
-        for (Map.Entry<String, pricing.StoreResult> entry : prices.entrySet()) {
-            String priceStr = entry.getValue().price.replaceAll("[^0-9.]", "");
-            if (priceStr.isEmpty())
-                continue;
-
-            try {
-                double value = Double.parseDouble(priceStr);
-                if (value < bestValue) {
-                    bestValue = value;
-                    bestEntry = entry;
-                }
-            } catch (Exception ignored) {
-            }
-        }
+        Map.Entry<String, pricing.StoreResult> bestEntry = findBestEntry(prices);
 
         if (bestEntry == null) {
             System.out.println("No valid prices found to compare.");
@@ -185,27 +203,15 @@ public class ProductIdentifier {
 
         pricing.StoreResult bestData = bestEntry.getValue();
         String bestStore = bestEntry.getKey();
-        double bestPrice = Double.parseDouble(bestData.price.replaceAll("[^0-9.]", ""));
+        double bestPrice = parsePrice(bestData.price);
 
         // ----------- Step 4: compare with DB and update if lower ----------
         if (dbPrice == null) {
             System.out.println("Product not in DB. You may consider adding it first.");
         } else if (bestPrice < dbPrice) {
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("title", extractedText);
-            payload.put("description", "");
-            payload.put("price", bestPrice);
-            payload.put("sourceUrl", bestData.url);
-
-            String json = mapper.writeValueAsString(payload);
-
-            Request putRequest = new Request.Builder()
-                    .url(API_BASE + "/products/" + recordId)
-                    .put(RequestBody.create(json, MediaType.parse("application/json")))
-                    .build();
-
-            client.newCall(putRequest).execute();
-            System.out.println("Database updated with new lower price: " + bestPrice + " at " + bestStore);
+            boolean queued = submit(ProductWrite.update(recordId, extractedText, bestPrice, bestData.url));
+            System.out.println((queued ? "Database update queued with new lower price: "
+                    : "Database updated with new lower price: ") + bestPrice + " at " + bestStore);
         } else {
             System.out.println("Existing DB price (" + dbPrice + ") is lower or equal than the best scraped price ("
                     + bestPrice + "). No update performed.");
@@ -214,6 +220,162 @@ public class ProductIdentifier {
         System.out.println("\nBest scraped price: " + bestPrice + " at " + bestStore);
     }
 
+    /**
+     * Sends a write to the API, through the write-behind queue if one is set.
+     * With a queue, this returns as soon as the write is journaled.
+     *
+     * @param write product save or price update
+     * @return true if the write was only queued, false if the API has accepted it
+     * @throws Exception if the write cannot be journaled, or, without a queue, if the request fails
+     */
+    public static boolean submit(ProductWrite write) throws Exception {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            queue.submit(write);
+            return true;
+        }
+        write.apply();
+        return false;
+    }
+
+    /**
+     * Stores a new product via {@code POST /products}.
+     *
+     * @param title     product title
+     * @param price     best price found
+     * @param sourceUrl store page the price came from
+     * @throws Exception if the HTTP request fails or the API answers with an error status
+     */
+    public static void saveProduct(String title, double price, String sourceUrl) throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("title", title);
+        payload.put("description", "");
+        payload.put("price", price);
+        payload.put("sourceUrl", sourceUrl);
+
+        String json = mapper.writeValueAsString(payload);
+
+        Request post = new Request.Builder()
+                .url(API_BASE + "/products")
+                .post(RequestBody.create(json, MediaType.parse("application/json")))
+                .build();
+
+        PipelineMetrics.time(PipelineMetrics.DB_SAVE, t -> {
+            try (Response response = client.newCall(post).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new ApiStatusException("POST /products", response.code());
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Checks via {@code GET /products?name=} whether a product is already stored.
+     *
+     * @param title product title
+     * @return true if the API returns at least one product for the title
+     * @throws Exception if the HTTP request fails or the API answers with an error status
+     */
+    public static boolean productExists(String title) throws Exception {
+        Request getRequest = new Request.Builder()
+                .url(API_BASE + "/products?name=" + URLEncoder.encode(title, "UTF-8"))
+                .get()
+                .build();
+
+        String body = PipelineMetrics.time(PipelineMetrics.DB_LOOKUP, t -> {
+            try (Response response = client.newCall(getRequest).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new ApiStatusException("GET /products", response.code());
+                }
+                return response.body().string();
+            }
+        });
+        return !body.isEmpty() && !body.equals("[]");
+    }
+
+    /**
+     * Overwrites a stored product with a new price via {@code PUT /products/{id}}.
+     *
+     * @param recordId  database id of the product
+     * @param title     product title
+     * @param price     new price
+     * @param sourceUrl store page the price came from
+     * @throws Exception if the HTTP request fails or the API answers with an error status
+     */
+    public static void updateProductPrice(String recordId, String title, double price, String sourceUrl)
+            throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("title", title);
+        payload.put("description", "");
+        payload.put("price", price);
+        payload.put("sourceUrl", sourceUrl);
+
+        String json = mapper.writeValueAsString(payload);
+
+        Request putRequest = new Request.Builder()
+                .url(API_BASE + "/products/" + recordId)
+                .put(RequestBody.create(json, MediaType.parse("application/json")))
+                .build();
+
+        PipelineMetrics.time(PipelineMetrics.DB_UPDATE, t -> {
+            try (Response response = client.newCall(putRequest).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new ApiStatusException("PUT /products/" + recordId, response.code());
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Fetches every stored product via {@code GET /products}.
+     *
+     * @return list of products as field maps
+     * @throws Exception if the HTTP request or JSON parsing fails
+     */
+    public static java.util.List<java.util.Map<String, Object>> listProducts() throws Exception {
+        Request getRequest = new Request.Builder()
+                .url(API_BASE + "/products")
+                .get()
+                .build();
+
+        return PipelineMetrics.time(PipelineMetrics.DB_LIST, t -> {
+            try (Response response = client.newCall(getRequest).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new ApiStatusException("GET /products", response.code());
+                }
+                return parseProducts(response.body().string());
+            }
+        });
+    }
+
+    /**
+     * Number of recorded lookups for a product title, see {@link #setLookupLog(LookupLog)}.
+     * Lookups by other processes are included as of the last {@link #reloadLookupCounts()}.
+     *
+     * @param title product title, as searched for
+     * @return lookup count
+     */
+    public static long lookupCount(String title) {
+        return lookups.count(normalize(title));
+    }
+
+    /**
+     * Reads the lookups other processes recorded in a shared lookup log since the last read.
+     */
+    public static void reloadLookupCounts() {
+        lookups.reload();
+    }
+
+    private static void recordLookup(String title) {
+        lookups.record(title);
+    }
+
+    private static String normalize(String text) {
+        return text.replaceAll("\\s+", " ").trim();
+    }
+
     /**
      * Extracts the best price from the database JSON response.
      *
@@ -222,9 +384,7 @@ public class ProductIdentifier {
      */
     public static String getBestPriceFromDB(String jsonArray) {
         try {
-            java.util.List<java.util.Map<String, Object>> list = mapper.readValue(jsonArray, mapper.getTypeFactory()
-                    .constructCollectionType(java.util.List.class,
-                            mapper.getTypeFactory().constructMapType(java.util.Map.class, String.class, Object.class)));
+            java.util.List<java.util.Map<String, Object>> list = parseProducts(jsonArray);
 
             double best = Double.MAX_VALUE;
             String bestIdentifier = null;
@@ -259,19 +419,62 @@ public class ProductIdentifier {
         String bestStore = null;
 
         for (Map.Entry<String, pricing.StoreResult> entry : prices.entrySet()) {
-            String priceStr = entry.getValue().price.replaceAll("[^0-9.]", "");
-            if (!priceStr.isEmpty()) {
-                try {
-                    double value = Double.parseDouble(priceStr);
-                    if (value < best) {
-                        bestStore = entry.getKey();
-                        best = value;
-                    }
-                } catch (Exception ignored) {
-                }
+            Double value = parsePrice(entry.getValue().price);
+            if (value != null && value < best) {
+                bestStore = entry.getKey();
+                best = value;
             }
         }
 
         return bestStore + " — " + best;
     }
-}
\ No newline at end of file
+
+    /**
+     * Picks the store with the lowest parseable price.
+     *
+     * @param prices Map of store names to StoreResult objects
+     * @return entry of the cheapest store, or null if no price could be parsed
+     */
+    public static Map.Entry<String, pricing.StoreResult> findBestEntry(Map<String, pricing.StoreResult> prices) {
+        Map.Entry<String, pricing.StoreResult> bestEntry = null;
+        double bestValue = Double.MAX_VALUE;
+
+        for (Map.Entry<String, pricing.StoreResult> entry : prices.entrySet()) {
+            Double value = parsePrice(entry.getValue().price);
+            if (value != null && value < bestValue) {
+                bestValue = value;
+                bestEntry = entry;
+            }
+        }
+        return bestEntry;
+    }
+
+    /**
+     * Parses a scraped price string, ignoring currency symbols and separators.
+     *
+     * @param price raw price text as scraped from a store page
+     * @return numeric price, or null if the text holds no valid number
+     */
+    public static Double parsePrice(String price) {
+        if (price == null) return null;
+        String priceStr = price.replaceAll("[^0-9.]", "");
+        if (priceStr.isEmpty()) return null;
+
+        try {
+            return Double.parseDouble(priceStr);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the JSON array returned by the {@code /products} endpoint.
+     *
+     * @param jsonArray JSON array of products from the database
+     * @return list of products as field maps
+     * @throws Exception if the JSON cannot be parsed
+     */
+    public static java.util.List<java.util.Map<String, Object>> parseProducts(String jsonArray) throws Exception {
+        return mapper.readValue(jsonArray, PRODUCT_LIST_TYPE);
+    }
+}
@@ -0,0 +1,97 @@
+package product;
+
+/**
+ * A pending write to the {@code /products} API: either saving a new product
+ * or updating the price of a stored one.
+ */
+public class ProductWrite {
+
+    /** Kind of write */
+    public enum Kind { SAVE, UPDATE }
+
+    /** Whether this is a POST of a new product or a PUT of an existing one */
+    public Kind kind;
+
+    /** Database id of the product to update; null for SAVE */
+    public String recordId;
+
+    /** Product title, as searched for */
+    public String title;
+
+    /** Best price found */
+    public double price;
+
+    /** Store page the price came from */
+    public String sourceUrl;
+
+    /** Needed for JSON deserialization from the journal */
+    public ProductWrite() {
+    }
+
+    private ProductWrite(Kind kind, String recordId, String title, double price, String sourceUrl) {
+        this.kind = kind;
+        this.recordId = recordId;
+        this.title = title;
+        this.price = price;
+        this.sourceUrl = sourceUrl;
+    }
+
+    /**
+     * Creates a write that saves a new product.
+     *
+     * @param title     product title
+     * @param price     best price found
+     * @param sourceUrl store page the price came from
+     * @return SAVE write
+     */
+    public static ProductWrite save(String title, double price, String sourceUrl) {
+        return new ProductWrite(Kind.SAVE, null, title, price, sourceUrl);
+    }
+
+    /**
+     * Creates a write that updates a stored product's price.
+     *
+     * @param recordId  database id of the product
+     * @param title     product title
+     * @param price     new price
+     * @param sourceUrl store page the price came from
+     * @return UPDATE write
+     */
+    public static ProductWrite update(String recordId, String title, double price, String sourceUrl) {
+        return new ProductWrite(Kind.UPDATE, recordId, title, price, sourceUrl);
+    }
+
+    /**
+     * Sends this write to the API.
+     *
+     * @throws Exception if the request fails or the API answers with an error status
+     */
+    public void apply() throws Exception {
+        apply(false);
+    }
+
+    /**
+     * Sends this write to the API. A SAVE that may already have reached the
+     * API is only sent if {@code GET /products?name=} finds no product with
+     * its title, since {@code POST /products} is not idempotent. An UPDATE is
+     * a PUT and is always sent.
+     *
+     * @param resend whether an earlier attempt may have been processed
+     * @return false if the SAVE was skipped because the product is already stored
+     * @throws Exception if a request fails or the API answers with an error status
+     */
+    public boolean apply(boolean resend) throws Exception {
+        if (kind == Kind.SAVE) {
+            if (resend && ProductIdentifier.productExists(title)) return false;
+            ProductIdentifier.saveProduct(title, price, sourceUrl);
+        } else {
+            ProductIdentifier.updateProductPrice(recordId, title, price, sourceUrl);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return kind + (recordId != null ? " " + recordId : "") + " '" + title + "' " + price;
+    }
+}
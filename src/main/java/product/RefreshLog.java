@@ -0,0 +1,112 @@
+package product;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * When each stored product's price was last refreshed, by product id, so a
+ * new process does not re-scrape what an earlier run just refreshed.
+ * <p>
+ * When backed by a file, every refresh appends an {@code id<TAB>epoch-millis}
+ * line, so it survives a crash. {@link #close()} compacts the file to one
+ * line per product. Lines appended by other processes are read the next time
+ * {@link #snapshot()} is called. Without a file, times cover this process only.
+ */
+public class RefreshLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshLog.class);
+
+    private final AppendLog file;
+    private final Map<String, Instant> refreshed = new HashMap<>();
+
+    /**
+     * Creates an in-memory log covering this process only.
+     */
+    public RefreshLog() {
+        this.file = null;
+    }
+
+    /**
+     * Opens a log persisted to a file, reading the refresh times already in it.
+     *
+     * @param file log file, created on the first refresh if missing
+     * @throws IOException if the existing file cannot be read
+     */
+    public RefreshLog(Path file) throws IOException {
+        this.file = new AppendLog(file);
+        this.file.readNew(this::apply, refreshed::clear);
+    }
+
+    /**
+     * Records a refresh. A write failure is logged; the time is still kept for this process.
+     *
+     * @param id   product id
+     * @param when time of the refresh
+     */
+    public synchronized void record(String id, Instant when) {
+        if (file != null) {
+            try {
+                file.append(id + '\t' + when.toEpochMilli(), this::apply, refreshed::clear);
+            } catch (IOException e) {
+                log.warn("Could not record refresh of product {}: {}", id, e.getMessage());
+            }
+        }
+        refreshed.merge(id, when, RefreshLog::latest);
+    }
+
+    /**
+     * Last refresh time of every product refreshed so far, including by other
+     * processes sharing the file.
+     *
+     * @return map of product id to refresh time
+     */
+    public synchronized Map<String, Instant> snapshot() {
+        if (file != null) {
+            try {
+                file.readNew(this::apply, refreshed::clear);
+            } catch (IOException e) {
+                log.warn("Could not read refresh log {}: {}", file.file(), e.getMessage());
+            }
+        }
+        return new HashMap<>(refreshed);
+    }
+
+    /**
+     * Rewrites the file with one line per product.
+     *
+     * @throws IOException if the file cannot be compacted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (file == null) return;
+        file.compact(this::apply, refreshed::clear, () -> {
+            List<String> lines = new ArrayList<>(refreshed.size());
+            refreshed.forEach((id, when) -> lines.add(id + '\t' + when.toEpochMilli()));
+            return lines;
+        });
+    }
+
+    private void apply(String line) {
+        int tab = line.lastIndexOf('\t');
+        if (tab <= 0) return;
+        try {
+            Instant when = Instant.ofEpochMilli(Long.parseLong(line.substring(tab + 1)));
+            refreshed.merge(line.substring(0, tab), when, RefreshLog::latest);
+        } catch (NumberFormatException e) {
+            // Line torn by a crash mid-append, ignore
+        }
+    }
+
+    private static Instant latest(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -0,0 +1,244 @@
+package product;
+
+import metrics.PipelineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Write-behind queue for product saves and price updates.
+ * <p>
+ * {@link #submit(ProductWrite)} appends the write to a {@link WriteJournal} and
+ * returns; a background flusher drains up to {@code batchSize} writes at a
+ * time and sends them to the API. Writes that fail with a network error or a
+ * retryable status stay at the head of the queue and are retried with
+ * exponential backoff; writes the API rejects outright are moved to the
+ * journal's rejected-writes file (see {@link WriteJournal#reject(long, String)}).
+ * Writes still pending in the journal when the queue is created (left over
+ * from a crash or an unfinished shutdown) are replayed first.
+ * <p>
+ * A failed attempt or a missing ack does not prove the API ignored the write:
+ * a read timeout can hit after the server stored it, and a crash can land
+ * between the response and the ack. Retried and replayed writes are therefore
+ * sent with {@link ProductWrite#apply(boolean) apply(true)}, which skips a
+ * SAVE whose product is already stored.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private static final Duration MIN_BACKOFF = Duration.ofMillis(200);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    /** How long close waits for the flusher to notice it is stopped */
+    private static final Duration STOP_WAIT = Duration.ofMillis(200);
+    /** How long {@link #close()} waits for the queue to drain while the API responds */
+    private static final Duration EXIT_DRAIN = Duration.ofSeconds(5);
+
+    private final WriteJournal journal;
+    private final int batchSize;
+    private final LinkedBlockingDeque<Entry> queue = new LinkedBlockingDeque<>();
+    private final Thread flusher;
+
+    private volatile boolean closing;
+    /** Whether the last flush stopped on a retryable failure, i.e. the flusher is backing off */
+    private volatile boolean failing;
+
+    /**
+     * Creates the queue, replays the journal's pending writes and starts the flusher.
+     *
+     * @param journal   journal the writes are made durable in
+     * @param batchSize maximum number of writes sent per flush
+     */
+    public WriteBehindQueue(WriteJournal journal, int batchSize) {
+        this.journal = journal;
+        this.batchSize = batchSize;
+
+        Map<Long, ProductWrite> recovered = journal.pending();
+        for (Map.Entry<Long, ProductWrite> e : recovered.entrySet()) {
+            Entry entry = new Entry(e.getKey(), e.getValue());
+            entry.attempted = true;
+            queue.add(entry);
+        }
+        if (!recovered.isEmpty()) log.info("Replaying {} journaled product writes", recovered.size());
+
+        this.flusher = new Thread(this::flushLoop, "write-behind-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Journals a write and queues it for sending.
+     *
+     * @param write save or price update
+     * @throws IOException if the write cannot be journaled
+     */
+    public void submit(ProductWrite write) throws IOException {
+        long seq = journal.append(write);
+        queue.add(new Entry(seq, write));
+        PipelineMetrics.increment(PipelineMetrics.WRITE_QUEUED);
+    }
+
+    /**
+     * Number of writes not yet accepted by the API.
+     *
+     * @return pending write count
+     */
+    public int pending() {
+        return journal.pendingCount();
+    }
+
+    /**
+     * Waits up to {@code timeout} for queued writes to be sent, then stops the
+     * flusher and closes the journal. The wait ends early once a send fails
+     * with a retryable error, since the API is then down or overloaded and
+     * waiting out the backoff would only delay exit. Unsent writes stay
+     * journaled and are replayed on the next start. A request still in flight
+     * is not waited for; its write stays unacknowledged and is re-checked on replay.
+     *
+     * @param timeout maximum time to wait for the queue to drain
+     * @throws IOException if the journal cannot be closed
+     */
+    public void close(Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (pending() > 0 && !failing && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closing = true;
+        flusher.interrupt();
+        try {
+            flusher.join(STOP_WAIT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = pending();
+        if (left > 0) log.warn("{} product writes left in the journal for the next start", left);
+        journal.close();
+    }
+
+    /**
+     * Sends what is queued, waiting up to 5 seconds unless the API is failing,
+     * then closes as {@link #close(Duration)} does.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        close(EXIT_DRAIN);
+    }
+
+    private void flushLoop() {
+        Duration backoff = MIN_BACKOFF;
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (!closing) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+
+                int done = flush(batch);
+                boolean allDone = done == batch.size();
+                failing = !allDone;
+                requeueUnsent(batch);
+
+                // Back off only while the API makes no progress at all
+                if (done > 0) backoff = MIN_BACKOFF;
+                if (!allDone) {
+                    Thread.sleep(backoff.toMillis());
+                    backoff = backoff.multipliedBy(2);
+                    if (backoff.compareTo(MAX_BACKOFF) > 0) backoff = MAX_BACKOFF;
+                }
+            } catch (InterruptedException e) {
+                requeueUnsent(batch);
+            }
+        }
+    }
+
+    /**
+     * Puts the writes of a batch that are not done back at the head of the
+     * queue, in their original order, and clears the batch.
+     *
+     * @param batch writes taken from the queue
+     */
+    private void requeueUnsent(List<Entry> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (!batch.get(i).done) queue.addFirst(batch.get(i));
+        }
+        batch.clear();
+    }
+
+    /**
+     * Sends writes in order until one fails with a retryable error.
+     *
+     * @param batch writes to send
+     * @return number of leading writes that are done (sent or rejected)
+     */
+    private int flush(List<Entry> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            try {
+                if (entry.write.apply(entry.attempted)) {
+                    PipelineMetrics.increment(PipelineMetrics.WRITE_SENT);
+                } else {
+                    PipelineMetrics.increment(PipelineMetrics.WRITE_DEDUPED);
+                    log.info("Skipping {}, the product is already stored", entry.write);
+                }
+            } catch (ApiStatusException e) {
+                if (e.isRetryable()) {
+                    entry.attempted = true;
+                    PipelineMetrics.increment(PipelineMetrics.WRITE_RETRIED);
+                    log.debug("Retrying {}: {}", entry.write, e.getMessage());
+                    return i;
+                }
+                PipelineMetrics.increment(PipelineMetrics.WRITE_REJECTED);
+                try {
+                    journal.reject(entry.seq, e.getMessage());
+                    log.error("API rejected {}, kept in {}: {}", entry.write, journal.rejectedFile(),
+                            e.getMessage());
+                } catch (IOException io) {
+                    // Left pending, so it is replayed and rejected again on the next start
+                    log.error("API rejected {} and it could not be set aside: {}", entry.write, io.getMessage());
+                }
+                entry.done = true;
+                continue;
+            } catch (Exception e) {
+                entry.attempted = true;
+                PipelineMetrics.increment(PipelineMetrics.WRITE_RETRIED);
+                log.debug("Retrying {}: {}", entry.write, e.getMessage());
+                return i;
+            }
+
+            try {
+                journal.ack(entry.seq);
+            } catch (IOException e) {
+                // The write is applied; without the ack it is replayed once more on restart
+                log.warn("Could not acknowledge journaled write {}: {}", entry.write, e.getMessage());
+            }
+            entry.done = true;
+        }
+        return batch.size();
+    }
+
+    /** A journaled write and its sequence number */
+    private static class Entry {
+
+        final long seq;
+        final ProductWrite write;
+        boolean done;
+        /** Whether an earlier attempt, possibly in an earlier run, may have reached the API */
+        boolean attempted;
+
+        Entry(long seq, ProductWrite write) {
+            this.seq = seq;
+            this.write = write;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of pending {@link ProductWrite}s.
+ * <p>
+ * Every write is appended as a record and acknowledged with a second record
+ * once the API has accepted it. On open, the file is scanned and writes that
+ * were never acknowledged are returned by {@link #pending()}, so they can be
+ * replayed after a crash.
+ * <p>
+ * File layout: an 8-byte header (magic, version) followed by records of
+ * <pre>
+ * int length | int crc32 | long seq | byte type | payload (JSON, WRITE only)
+ * </pre>
+ * where length and crc32 cover everything after the crc. The length is
+ * written last, so a record torn by a crash reads as the end of the journal.
+ * When the mapping is full, the journal is compacted to its pending writes,
+ * growing the file if they still do not fit.
+ * <p>
+ * Writes the API rejects outright are moved by {@link #reject(long, String)}
+ * to a sibling {@code .rejected} file of JSON lines, so a scraped price is
+ * never dropped silently; {@link #rejectedCount()} reports them on the next open.
+ * <p>
+ * Only one open journal may use a file at a time. An exclusive lock on a
+ * sibling {@code .lock} file, which unlike the journal is never replaced by
+ * compaction, is held from open to {@link #close()}.
+ */
+public class WriteJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x504A524E; // "PJRN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 4 + 4 + 8 + 1;
+
+    private static final byte TYPE_WRITE = 1;
+    private static final byte TYPE_ACK = 2;
+
+    /** Default size of the mapped file */
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Lock files held by journals of this JVM. Checked before opening the lock
+     * file, because closing any channel to it would release this process's lock.
+     */
+    private static final Set<Path> heldLocks = ConcurrentHashMap.newKeySet();
+
+    private final Path file;
+    private final Path rejectedFile;
+    private final boolean sync;
+    private final Map<Long, ProductWrite> pending = new LinkedHashMap<>();
+
+    private Path lockFile;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private long nextSeq = 1;
+
+    /**
+     * Opens or creates a journal and recovers its pending writes.
+     *
+     * @param file     journal file
+     * @param capacity initial size of the mapped file in bytes
+     * @param sync     whether each append is forced to disk before returning;
+     *                 without it, appends survive a process crash but not a power loss
+     * @throws IOException if the file cannot be mapped, is not a journal, or is
+     *                     in use by another open journal
+     */
+    public WriteJournal(Path file, int capacity, boolean sync) throws IOException {
+        this.file = file;
+        this.rejectedFile = file.resolveSibling(file.getFileName() + ".rejected");
+        this.sync = sync;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        lock();
+        try {
+            open(capacity);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) channel.close();
+            unlock();
+            throw e;
+        }
+    }
+
+    private void open(int capacity) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) >= HEADER_SIZE;
+        map(file, exists ? Math.max(capacity, (int) Files.size(file)) : capacity);
+        if (exists) {
+            recover();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.position(HEADER_SIZE);
+            force(0, HEADER_SIZE);
+        }
+        if (!pending.isEmpty() || buffer.position() > HEADER_SIZE) compact(this.capacity);
+    }
+
+    /**
+     * Writes recovered on open plus those appended since, in append order,
+     * that have not been acknowledged.
+     *
+     * @return map of sequence number to write
+     */
+    public synchronized Map<Long, ProductWrite> pending() {
+        return new LinkedHashMap<>(pending);
+    }
+
+    /**
+     * Number of writes not yet acknowledged.
+     *
+     * @return pending write count
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Appends a write.
+     *
+     * @param write write to journal
+     * @return sequence number to pass to {@link #ack(long)}
+     * @throws IOException if the record cannot be written or the journal is closed
+     */
+    public synchronized long append(ProductWrite write) throws IOException {
+        if (channel == null) throw new IOException("Journal is closed: " + file);
+        long seq = nextSeq++;
+        appendRecord(seq, TYPE_WRITE, mapper.writeValueAsBytes(write));
+        pending.put(seq, write);
+        return seq;
+    }
+
+    /**
+     * Marks a write as accepted by the API.
+     *
+     * @param seq sequence number returned by {@link #append(ProductWrite)}
+     * @throws IOException if the record cannot be written or the journal is closed
+     */
+    public synchronized void ack(long seq) throws IOException {
+        if (channel == null) throw new IOException("Journal is closed: " + file);
+        if (pending.remove(seq) == null) return;
+        appendRecord(seq, TYPE_ACK, new byte[0]);
+    }
+
+    /**
+     * Moves a write the API refused to the rejected-writes file, then
+     * acknowledges it. If the rejected-writes file cannot be written, the
+     * write stays pending and is replayed on the next start.
+     *
+     * @param seq    sequence number returned by {@link #append(ProductWrite)}
+     * @param reason why the API refused it, e.g. the status
+     * @throws IOException if either file cannot be written or the journal is closed
+     */
+    public synchronized void reject(long seq, String reason) throws IOException {
+        if (channel == null) throw new IOException("Journal is closed: " + file);
+        ProductWrite write = pending.get(seq);
+        if (write == null) return;
+
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("rejectedAt", Instant.now().toString());
+        line.put("reason", reason);
+        line.put("write", write);
+        byte[] json = mapper.writeValueAsBytes(line);
+        byte[] record = Arrays.copyOf(json, json.length + 1);
+        record[json.length] = '\n';
+        if (sync) {
+            Files.write(rejectedFile, record, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                    StandardOpenOption.DSYNC);
+        } else {
+            Files.write(rejectedFile, record, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        ack(seq);
+    }
+
+    /**
+     * File that rejected writes are kept in, one JSON object per line.
+     *
+     * @return path of the rejected-writes file, which may not exist yet
+     */
+    public Path rejectedFile() {
+        return rejectedFile;
+    }
+
+    /**
+     * Number of writes in the rejected-writes file, from this and earlier runs.
+     *
+     * @return rejected write count
+     * @throws IOException if the file exists but cannot be read
+     */
+    public int rejectedCount() throws IOException {
+        if (!Files.exists(rejectedFile)) return 0;
+        try (Stream<String> lines = Files.lines(rejectedFile)) {
+            return (int) lines.filter(l -> !l.isBlank()).count();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        try {
+            buffer.force();
+            channel.close();
+            channel = null;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Takes the exclusive lock on the journal's lock file.
+     *
+     * @throws IOException if another process or another journal in this JVM holds it
+     */
+    private void lock() throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        path = path.resolveSibling(path.getFileName() + ".lock");
+        if (!heldLocks.add(path)) {
+            throw new IOException("Journal is already open in this process: " + file);
+        }
+        try {
+            lockChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = lockChannel.tryLock();
+        } catch (IOException | RuntimeException e) {
+            if (lockChannel != null) lockChannel.close();
+            lockChannel = null;
+            heldLocks.remove(path);
+            throw e;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            heldLocks.remove(path);
+            throw new IOException("Journal is in use by another process: " + file);
+        }
+        lockFile = path;
+    }
+
+    private void unlock() throws IOException {
+        if (lockChannel == null) return;
+        try {
+            // Closing the channel releases the lock
+            lockChannel.close();
+        } finally {
+            heldLocks.remove(lockFile);
+            lockChannel = null;
+            lock = null;
+            lockFile = null;
+        }
+    }
+
+    private void appendRecord(long seq, byte type, byte[] payload) throws IOException {
+        int size = RECORD_OVERHEAD + payload.length;
+        if (buffer.remaining() < size) {
+            int needed = HEADER_SIZE + size + pendingBytes();
+            compact(Math.max(capacity, Integer.highestOneBit(needed) << 1));
+        }
+        int start = writeRecord(seq, type, payload);
+        force(start, size);
+    }
+
+    /**
+     * Writes one record at the current position, length last.
+     *
+     * @return offset of the record
+     */
+    private int writeRecord(long seq, byte type, byte[] payload) {
+        int start = buffer.position();
+        ByteBuffer body = ByteBuffer.allocate(RECORD_OVERHEAD - 8 + payload.length);
+        body.putLong(seq).put(type).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(body.array());
+        buffer.putInt(start, body.capacity());
+        return start;
+    }
+
+    private void recover() throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a product write journal: " + file);
+        }
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_OVERHEAD <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length < RECORD_OVERHEAD - 8 || pos + 8 + length > capacity) break;
+
+            byte[] body = new byte[length];
+            buffer.get(pos + 8, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) break;
+
+            ByteBuffer b = ByteBuffer.wrap(body);
+            long seq = b.getLong();
+            byte type = b.get();
+            if (type == TYPE_WRITE) {
+                pending.put(seq, mapper.readValue(body, b.position(), b.remaining(), ProductWrite.class));
+            } else if (type == TYPE_ACK) {
+                pending.remove(seq);
+            }
+            nextSeq = Math.max(nextSeq, seq + 1);
+            pos += 8 + length;
+        }
+        buffer.position(pos);
+    }
+
+    /**
+     * Rewrites the journal with only its pending writes, via a temporary file
+     * renamed over the old one.
+     *
+     * @param newCapacity size of the new mapped file
+     */
+    private void compact(int newCapacity) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(tmp);
+        Map<Long, ProductWrite> keep = new LinkedHashMap<>(pending);
+
+        channel.close();
+        map(tmp, newCapacity);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.position(HEADER_SIZE);
+        for (Map.Entry<Long, ProductWrite> e : keep.entrySet()) {
+            byte[] payload = mapper.writeValueAsBytes(e.getValue());
+            if (buffer.remaining() < RECORD_OVERHEAD + payload.length) {
+                throw new IOException("Journal capacity too small for pending writes: " + newCapacity);
+            }
+            writeRecord(e.getKey(), TYPE_WRITE, payload);
+        }
+        buffer.force();
+        channel.close();
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        int position = buffer.position();
+        map(file, newCapacity);
+        buffer.position(position);
+    }
+
+    private int pendingBytes() throws IOException {
+        int total = 0;
+        for (ProductWrite w : pending.values()) {
+            total += RECORD_OVERHEAD + mapper.writeValueAsBytes(w).length;
+        }
+        return total;
+    }
+
+    private void map(Path path, int size) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = size;
+    }
+
+    private void force(int index, int length) {
+        if (sync) buffer.force(index, length);
+    }
+}
@@ -0,0 +1,89 @@
+package metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Failed stage executions are recorded apart from successful ones, and
+ * nothing is recorded while metrics are disabled.
+ */
+class PipelineMetricsTest {
+
+    private static final String STAGE = "test.stage";
+
+    @BeforeEach
+    @AfterEach
+    void clear() {
+        PipelineMetrics.setEnabled(true);
+        PipelineMetrics.reset();
+    }
+
+    @Test
+    void failedExecutionsDoNotCountAsSuccessful() {
+        PipelineMetrics.record(STAGE, 2_000_000);
+        PipelineMetrics.record(STAGE, 4_000_000);
+        try (StageTimer t = PipelineMetrics.start(STAGE)) {
+            t.fail();
+        }
+        PipelineMetrics.recordFailure(STAGE, 30_000_000_000L);
+
+        MetricsSnapshot snapshot = PipelineMetrics.snapshot();
+        MetricsSnapshot.StageStats ok = snapshot.stages.get(STAGE);
+        assertEquals(2, ok.count);
+        assertTrue(ok.maxMs < 5, "a 30 s failure must not reach the successful max: " + ok.maxMs);
+        assertEquals(2, snapshot.failures.get(STAGE).count);
+        assertTrue(snapshot.toString().contains("failed stage"), snapshot.toString());
+    }
+
+    @Test
+    void timeRecordsAThrowingBodyAsFailed() {
+        assertThrows(IOException.class, () -> PipelineMetrics.time(STAGE, t -> {
+            throw new IOException("down");
+        }));
+        assertEquals("ok", PipelineMetrics.time(STAGE, t -> "ok"));
+
+        MetricsSnapshot snapshot = PipelineMetrics.snapshot();
+        assertEquals(1, snapshot.stages.get(STAGE).count);
+        assertEquals(1, snapshot.failures.get(STAGE).count);
+    }
+
+    @Test
+    void stageThatNeverFailedHasNoFailureEntry() {
+        try (StageTimer t = PipelineMetrics.start(STAGE)) {
+            // succeeds
+        }
+        MetricsSnapshot snapshot = PipelineMetrics.snapshot();
+        assertTrue(snapshot.failures.isEmpty());
+        assertFalse(snapshot.toString().contains("failed stage"), snapshot.toString());
+    }
+
+    @Test
+    void disabledMetricsRecordNothing() {
+        PipelineMetrics.setEnabled(false);
+        try (StageTimer t = PipelineMetrics.start(STAGE)) {
+            t.fail();
+        }
+        PipelineMetrics.time(STAGE, t -> "ok");
+        PipelineMetrics.increment(PipelineMetrics.DB_HIT);
+        PipelineMetrics.recordValue(PipelineMetrics.OCR_FAST_CONFIDENCE, 80);
+
+        MetricsSnapshot snapshot = PipelineMetrics.snapshot();
+        assertTrue(snapshot.stages.isEmpty());
+        assertTrue(snapshot.failures.isEmpty());
+        assertTrue(snapshot.counters.isEmpty());
+        assertTrue(snapshot.values.isEmpty());
+
+        // Turning them back on records again
+        PipelineMetrics.setEnabled(true);
+        PipelineMetrics.time(STAGE, t -> "ok");
+        assertEquals(1, PipelineMetrics.snapshot().stages.get(STAGE).count);
+    }
+}
@@ -0,0 +1,90 @@
+package ocr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks {@link BkTree#nearest(long, int)} against a linear scan, so that the
+ * pruning by the triangle inequality never skips a closer hash.
+ */
+class BkTreeTest {
+
+    @Test
+    void emptyTreeFindsNothing() {
+        assertNull(new BkTree<String>().nearest(0L, 64));
+    }
+
+    @Test
+    void radiusIsInclusive() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(0b1111L, "four bits");
+
+        assertNull(tree.nearest(0L, 3));
+        BkTree.Match<String> match = tree.nearest(0L, 4);
+        assertNotNull(match);
+        assertEquals("four bits", match.value);
+        assertEquals(4, match.distance);
+        assertEquals(0b1111L, match.hash);
+    }
+
+    @Test
+    void addingTheSameHashReplacesItsValue() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(42L, "old");
+        tree.add(43L, "neighbour");
+        tree.add(42L, "new");
+
+        assertEquals(2, tree.size());
+        assertEquals("new", tree.nearest(42L, 0).value);
+    }
+
+    @Test
+    void nearestMatchesLinearScan() {
+        Random random = new Random(11);
+        // Clusters of near-duplicates, like several photos of each label, plus unrelated hashes
+        List<Long> hashes = new ArrayList<>();
+        for (int cluster = 0; cluster < 200; cluster++) {
+            long center = random.nextLong();
+            hashes.add(center);
+            for (int i = 0; i < 4; i++) hashes.add(flipBits(center, 1 + random.nextInt(6), random));
+        }
+        BkTree<Integer> tree = new BkTree<>();
+        for (int i = 0; i < hashes.size(); i++) tree.add(hashes.get(i), i);
+
+        for (int q = 0; q < 2000; q++) {
+            long base = hashes.get(random.nextInt(hashes.size()));
+            long query = q % 4 == 0 ? random.nextLong() : flipBits(base, random.nextInt(12), random);
+            for (int radius : new int[] {0, 1, 4, 10, 24, 64}) {
+                int expected = linearNearestDistance(hashes, query);
+                BkTree.Match<Integer> match = tree.nearest(query, radius);
+                if (expected > radius) {
+                    assertNull(match, "query " + q + " radius " + radius);
+                } else {
+                    assertNotNull(match, "query " + q + " radius " + radius);
+                    assertEquals(expected, match.distance, "query " + q + " radius " + radius);
+                    assertEquals(match.distance, PerceptualHash.distance(query, match.hash));
+                    assertEquals(match.hash, (long) hashes.get(match.value));
+                }
+            }
+        }
+    }
+
+    private static int linearNearestDistance(List<Long> hashes, long query) {
+        int best = Integer.MAX_VALUE;
+        for (long h : hashes) best = Math.min(best, PerceptualHash.distance(query, h));
+        return best;
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        long flipped = hash;
+        while (PerceptualHash.distance(flipped, hash) < bits) flipped ^= 1L << random.nextInt(64);
+        return flipped;
+    }
+}
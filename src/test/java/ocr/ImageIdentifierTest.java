@@ -0,0 +1,51 @@
+package ocr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * When a barcode scan confirms a perceptual-hash match, see
+ * {@link ImageIdentifier#confirms(BkTree.Match, String, int)}.
+ */
+class ImageIdentifierTest {
+
+    @Test
+    void barcodeEntryNeedsTheSameBarcode() {
+        BkTree.Match<IdentificationCache.Entry> known = match("Oat Milk 1L", "4006381333931", 3);
+        assertTrue(ImageIdentifier.confirms(known, "4006381333931", 1));
+        assertFalse(ImageIdentifier.confirms(known, "5012345678900", 1));
+        assertFalse(ImageIdentifier.confirms(known, null, 1), "no barcode is not the same barcode");
+    }
+
+    @Test
+    void ocrEntryNeedsNoBarcodeAndATightMatch() {
+        assertTrue(ImageIdentifier.confirms(match("Rye Bread", null, 0), null, 1));
+        assertTrue(ImageIdentifier.confirms(match("Rye Bread", null, 1), null, 1));
+        assertFalse(ImageIdentifier.confirms(match("Rye Bread", null, 2), null, 1),
+                "a missing barcode alone confirms nothing");
+        assertFalse(ImageIdentifier.confirms(match("Rye Bread", null, 0), "4006381333931", 1));
+    }
+
+    @Test
+    void ocrRadiusDefaultsToOneAndCannotExceedTheRadius(@TempDir Path dir) throws IOException {
+        try (IdentificationCache cache = new IdentificationCache(dir.resolve("a.tsv"), 4, true)) {
+            assertEquals(1, cache.ocrRadius());
+        }
+        try (IdentificationCache cache = new IdentificationCache(dir.resolve("b.tsv"), 0, true)) {
+            assertEquals(0, cache.ocrRadius());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new IdentificationCache(dir.resolve("c.tsv"), 2, 3, true));
+    }
+
+    private static BkTree.Match<IdentificationCache.Entry> match(String text, String barcode, int distance) {
+        return new BkTree.Match<>(0L, new IdentificationCache.Entry(text, barcode), distance);
+    }
+}
@@ -0,0 +1,174 @@
+package ocr;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the byte-array chain, {@link ImagePreprocessor#preprocessForOCR(BufferedImage, GrayKernels)},
+ * with the Java2D chain it replaces: each kernel and the whole chain must
+ * produce the same pixels.
+ */
+class ImagePreprocessorTest {
+
+    private static final GrayKernels kernels = new ScalarGrayKernels();
+
+    @Test
+    void grayMatchesJava2D() {
+        BufferedImage img = noise(new Random(1), 257, 131);
+        byte[] gray = new byte[img.getWidth() * img.getHeight()];
+        kernels.rgbToGray(img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth()), gray);
+        assertSamePixels(ImagePreprocessor.toGrayscale(img), gray);
+    }
+
+    @Test
+    void blurMatchesJava2D() {
+        byte[] src = grayNoise(new Random(2), 257 * 131);
+        byte[] dst = new byte[src.length];
+        kernels.convolve3x3(src, dst, 257, 131, GrayKernels.BLUR_WEIGHTS,
+                GrayKernels.BLUR_MULTIPLIER, GrayKernels.BLUR_SHIFT);
+        assertSamePixels(ImagePreprocessor.medianBlur(ImagePreprocessor.toImage(src, 257, 131)), dst);
+    }
+
+    @Test
+    void stretchMatchesJava2DForEveryRange() {
+        // Every value from min to max, so each product that lands between two levels is covered
+        for (int min = 0; min < 256; min++) {
+            for (int max = min + 1; max < 256; max++) {
+                byte[] src = new byte[max - min + 1];
+                for (int i = 0; i < src.length; i++) src[i] = (byte) (min + i);
+                byte[] dst = new byte[src.length];
+                kernels.stretch(src, dst, min, max);
+                assertSamePixels(ImagePreprocessor.contrastStretch(ImagePreprocessor.toImage(src, src.length, 1)),
+                        dst, "range " + min + "-" + max);
+            }
+        }
+    }
+
+    @Test
+    void thresholdMatchesJava2D() {
+        byte[] src = grayNoise(new Random(3), 257 * 131);
+        byte[] dst = new byte[src.length];
+        kernels.threshold(src, dst);
+        assertSamePixels(ImagePreprocessor.adaptiveThreshold(ImagePreprocessor.toImage(src, 257, 131)), dst);
+    }
+
+    @Test
+    void thresholdMeanDoesNotOverflowOnLargeBrightImages() {
+        // 9 MP at level 250 sum to more than Integer.MAX_VALUE
+        int w = 3000, h = 3000;
+        byte[] src = new byte[w * h];
+        Arrays.fill(src, (byte) 250);
+        src[0] = 0;
+        BufferedImage bin = ImagePreprocessor.adaptiveThreshold(ImagePreprocessor.toImage(src, w, h));
+        assertEquals(0, bin.getRaster().getSample(0, 0, 0));
+        assertEquals(1, bin.getRaster().getSample(1, 0, 0));
+    }
+
+    @Test
+    void sharpenMatchesJava2D() {
+        byte[] src = grayNoise(new Random(4), 257 * 131);
+        for (int i = 0; i < src.length; i++) src[i] = (byte) (src[i] < 0 ? 255 : 0);
+        byte[] dst = new byte[src.length];
+        kernels.convolve3x3(src, dst, 257, 131, GrayKernels.SHARPEN_WEIGHTS, 1, 0);
+        BufferedImage binary = ImagePreprocessor.adaptiveThreshold(ImagePreprocessor.toImage(src, 257, 131));
+        assertSamePixels(ImagePreprocessor.sharpenImage(binary), dst);
+    }
+
+    @Test
+    void kernelChainMatchesJava2DOnNoise() {
+        // Noise puts many pixels right at the threshold mean, where any rounding difference flips them
+        assertChainsMatch(noise(new Random(42), 400, 400));
+        assertChainsMatch(noise(new Random(43), 333, 301));
+    }
+
+    @Test
+    void kernelChainMatchesJava2DOnText() {
+        assertChainsMatch(label(640, 360));
+    }
+
+    @Test
+    void kernelChainUpscalesSmallImages() {
+        BufferedImage small = new BufferedImage(200, 120, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = small.createGraphics();
+        g.drawImage(label(640, 360), 0, 0, 200, 120, null);
+        g.dispose();
+
+        BufferedImage out = assertChainsMatch(small);
+        assertEquals(400, out.getWidth());
+        assertEquals(240, out.getHeight());
+    }
+
+    /**
+     * Runs both chains and checks that every output pixel is the same.
+     *
+     * @return output of the kernel chain
+     */
+    private static BufferedImage assertChainsMatch(BufferedImage img) {
+        BufferedImage java2d = ImagePreprocessor.preprocessForOCR(img);
+        BufferedImage out = ImagePreprocessor.preprocessForOCR(img, kernels);
+        assertEquals(java2d.getWidth(), out.getWidth());
+        assertEquals(java2d.getHeight(), out.getHeight());
+        assertSamePixels(java2d, ImagePreprocessor.pixels(out));
+        return out;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, byte[] actual) {
+        assertSamePixels(expected, actual, expected.getWidth() + "x" + expected.getHeight());
+    }
+
+    /**
+     * Compares band 0 of a Java2D result with kernel output. The Java2D stages
+     * return gray, 1-bit or RGB images; 1-bit samples are scaled to 0 and 255.
+     */
+    private static void assertSamePixels(BufferedImage expected, byte[] actual, String message) {
+        int w = expected.getWidth(), h = expected.getHeight();
+        int[] samples = expected.getRaster().getSamples(0, 0, w, h, 0, (int[]) null);
+        int scale = expected.getType() == BufferedImage.TYPE_BYTE_BINARY ? 255 : 1;
+        int[] levels = new int[actual.length];
+        for (int i = 0; i < actual.length; i++) levels[i] = actual[i] & 0xFF;
+        for (int i = 0; i < samples.length; i++) samples[i] *= scale;
+        assertArrayEquals(samples, levels, message);
+    }
+
+    private static BufferedImage noise(Random random, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static byte[] grayNoise(Random random, int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    /** Dark text on a light background, like a product label */
+    static BufferedImage label(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(235, 230, 220));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(30, 30, 40));
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 48));
+        g.drawString("Oat Milk 1L", 40, 120);
+        g.setFont(new Font(Font.SERIF, Font.PLAIN, 32));
+        g.drawString("Organic, unsweetened", 40, 220);
+        g.dispose();
+        return img;
+    }
+}
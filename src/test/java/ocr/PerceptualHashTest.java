@@ -0,0 +1,185 @@
+package ocr;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link PerceptualHash#dHash(BufferedImage)} barely moves under
+ * the changes between two photos of one label, and separates different labels.
+ */
+class PerceptualHashTest {
+
+    /** Largest distance accepted for the same label; the CLI is run with radii around 4 */
+    private static final int SAME = 4;
+
+    /** Smallest distance expected between different labels */
+    private static final int DIFFERENT = 12;
+
+    @Test
+    void hashIsDeterministic() {
+        BufferedImage img = label("Oat Milk 1L", new Color(215, 205, 190), 640, 480);
+        assertEquals(PerceptualHash.dHash(img), PerceptualHash.dHash(copy(img)));
+    }
+
+    @Test
+    void rescalingKeepsTheHash() {
+        BufferedImage img = label("Oat Milk 1L", new Color(215, 205, 190), 640, 480);
+        assertClose(img, scale(img, 320, 240));
+        assertClose(img, scale(img, 1600, 1200));
+        // Aspect ratio changes move cell boundaries, but not the order of neighbouring cells
+        assertClose(img, scale(img, 600, 480));
+    }
+
+    @Test
+    void brightnessAndNoiseKeepTheHash() {
+        BufferedImage img = label("Oat Milk 1L", new Color(215, 205, 190), 640, 480);
+        assertClose(img, adjust(img, 1.0, 25, 0, 1));
+        assertClose(img, adjust(img, 0.8, -10, 0, 2));
+        assertClose(img, adjust(img, 1.0, 0, 12, 3));
+    }
+
+    @Test
+    void jpegRecompressionKeepsTheHash() throws IOException {
+        BufferedImage img = label("Oat Milk 1L", new Color(215, 205, 190), 640, 480);
+        assertClose(img, jpeg(img, 0.9f));
+        assertClose(img, jpeg(img, 0.3f));
+    }
+
+    @Test
+    void differentLabelsAreFarApart() {
+        long oat = PerceptualHash.dHash(label("Oat Milk 1L", new Color(215, 205, 190), 640, 480));
+        long rye = PerceptualHash.dHash(label("Rye Bread 500g", new Color(60, 90, 140), 640, 480));
+        long noise = PerceptualHash.dHash(noise(640, 480, 5));
+        assertFar(oat, rye);
+        assertFar(oat, noise);
+        assertFar(rye, noise);
+    }
+
+    @Test
+    void degenerateImagesDoNotFail() {
+        assertEquals(0L, PerceptualHash.dHash(new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB)),
+                "a uniform image has no darker cells");
+        // Smaller than the 9x8 grid: some cells get no samples
+        PerceptualHash.dHash(noise(3, 2, 6));
+        PerceptualHash.dHash(noise(1, 1, 7));
+    }
+
+    private static void assertClose(BufferedImage a, BufferedImage b) {
+        int d = PerceptualHash.distance(PerceptualHash.dHash(a), PerceptualHash.dHash(b));
+        assertTrue(d <= SAME, "distance " + d);
+    }
+
+    private static void assertFar(long a, long b) {
+        int d = PerceptualHash.distance(a, b);
+        assertTrue(d >= DIFFERENT, "distance " + d);
+    }
+
+    /**
+     * Label-like photo: uneven lighting across a background, a dark band and
+     * shape whose placement depends on the text, and the text itself. Flat,
+     * evenly lit cells would tie and flip at the slightest change, which real
+     * photos do not have.
+     */
+    private static BufferedImage label(String text, Color background, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setPaint(new GradientPaint(0, 0, background, width, height, background.darker()));
+        g.fillRect(0, 0, width, height);
+
+        boolean bandOnTop = text.length() % 2 == 0;
+        int bandY = bandOnTop ? height / 10 : height * 2 / 3;
+        g.setColor(background.darker().darker());
+        g.fillRect(0, bandY, width, height / 6);
+        g.fillOval(bandOnTop ? width / 10 : width / 2, bandOnTop ? height / 2 : height / 10, width / 3, height / 3);
+        g.setColor(new Color(250, 250, 245));
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, height / 8));
+        g.drawString(text, width / 20, bandY + height / 8);
+        g.setColor(new Color(20, 20, 30));
+        g.setFont(new Font(Font.SERIF, Font.PLAIN, height / 12));
+        g.drawString(text.toUpperCase(), width / 20, bandOnTop ? height * 9 / 10 : height / 2);
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage noise(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        // Blocks rather than single pixels, so the cell means actually differ
+        int block = Math.max(1, Math.min(width, height) / 16);
+        for (int by = 0; by < height; by += block) {
+            for (int bx = 0; bx < width; bx += block) {
+                int rgb = random.nextInt();
+                for (int y = by; y < Math.min(height, by + block); y++) {
+                    for (int x = bx; x < Math.min(width, bx + block); x++) img.setRGB(x, y, rgb);
+                }
+            }
+        }
+        return img;
+    }
+
+    private static BufferedImage scale(BufferedImage img, int width, int height) {
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(img, 0, 0, width, height, null);
+        g.dispose();
+        return out;
+    }
+
+    private static BufferedImage copy(BufferedImage img) {
+        return scale(img, img.getWidth(), img.getHeight());
+    }
+
+    /** Applies {@code gain * v + offset} per channel plus uniform noise of up to {@code noise} levels */
+    private static BufferedImage adjust(BufferedImage img, double gain, int offset, int noise, long seed) {
+        Random random = new Random(seed);
+        BufferedImage out = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                int p = img.getRGB(x, y), q = 0;
+                for (int shift = 16; shift >= 0; shift -= 8) {
+                    int jitter = noise == 0 ? 0 : random.nextInt(2 * noise + 1) - noise;
+                    int v = (int) Math.round(gain * ((p >>> shift) & 0xFF)) + offset + jitter;
+                    q |= Math.max(0, Math.min(255, v)) << shift;
+                }
+                out.setRGB(x, y, q);
+            }
+        }
+        return out;
+    }
+
+    private static BufferedImage jpeg(BufferedImage img, float quality) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,112 @@
+package product;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lookup counts of {@link LookupLog} across runs, compaction, and two logs
+ * sharing a file as two client processes would.
+ */
+class LookupLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void countsAddUpAcrossRuns() throws IOException {
+        Path file = dir.resolve("lookup-counts.log");
+        try (LookupLog log = new LookupLog(file)) {
+            log.record("Oat Milk 1L");
+            log.record("Oat Milk 1L");
+            log.record("Rye Bread");
+            assertEquals(2, log.count("Oat Milk 1L"));
+        }
+        // No close this time: the appended lines alone must carry over, as after a crash
+        LookupLog second = new LookupLog(file);
+        assertEquals(2, second.count("Oat Milk 1L"));
+        second.record("Oat Milk 1L");
+
+        try (LookupLog third = new LookupLog(file)) {
+            assertEquals(3, third.count("Oat Milk 1L"));
+            assertEquals(1, third.count("Rye Bread"));
+            assertEquals(0, third.count("Cold Brew"));
+        }
+    }
+
+    @Test
+    void closeCompactsToOneLinePerTitle() throws IOException {
+        Path file = dir.resolve("lookup-counts.log");
+        try (LookupLog log = new LookupLog(file)) {
+            for (int i = 0; i < 500; i++) log.record(i % 3 == 0 ? "Rye Bread" : "Oat Milk 1L");
+        }
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size(), lines.toString());
+        assertTrue(lines.contains("Oat Milk 1L\t333"), lines.toString());
+        assertTrue(lines.contains("Rye Bread\t167"), lines.toString());
+    }
+
+    @Test
+    void oldOneTitlePerLineFilesStillCount() throws IOException {
+        Path file = dir.resolve("lookup-counts.log");
+        Files.write(file, List.of("Oat Milk 1L", "Oat Milk 1L", "Rye Bread"));
+
+        try (LookupLog log = new LookupLog(file)) {
+            assertEquals(2, log.count("Oat Milk 1L"));
+            log.record("Rye Bread");
+        }
+        try (LookupLog log = new LookupLog(file)) {
+            assertEquals(2, log.count("Oat Milk 1L"));
+            assertEquals(2, log.count("Rye Bread"));
+        }
+    }
+
+    @Test
+    void lookupsOfAnotherProcessAreCountedOnReloadAndSurviveItsCompaction() throws IOException {
+        Path file = dir.resolve("lookup-counts.log");
+        LookupLog a = new LookupLog(file);
+        LookupLog b = new LookupLog(file);
+        a.record("Oat Milk 1L");
+        b.record("Oat Milk 1L");
+        b.record("Rye Bread");
+
+        // count() does not read the file; reload() does
+        assertEquals(1, a.count("Oat Milk 1L"));
+        a.reload();
+        assertEquals(2, a.count("Oat Milk 1L"));
+        assertEquals(1, a.count("Rye Bread"));
+
+        b.close();
+        a.record("Rye Bread");
+        assertEquals(2, a.count("Oat Milk 1L"), "compaction by b must not be counted twice");
+        assertEquals(2, a.count("Rye Bread"));
+        a.close();
+
+        try (LookupLog log = new LookupLog(file)) {
+            assertEquals(2, log.count("Oat Milk 1L"));
+            assertEquals(2, log.count("Rye Bread"));
+        }
+    }
+
+    @Test
+    void tornLineDoesNotSwallowTheNextLookup() throws IOException {
+        Path file = dir.resolve("lookup-counts.log");
+        Files.write(file, "Oat Milk 1L\t1\nRye Br".getBytes(), StandardOpenOption.CREATE);
+
+        try (LookupLog log = new LookupLog(file)) {
+            log.record("Cold Brew");
+        }
+        try (LookupLog log = new LookupLog(file)) {
+            assertEquals(1, log.count("Oat Milk 1L"));
+            assertEquals(1, log.count("Cold Brew"));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package product;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Refresh times of {@link RefreshLog} across runs and across two logs
+ * sharing a file, as two client processes would.
+ */
+class RefreshLogTest {
+
+    private static final Instant T1 = Instant.parse("2026-10-01T08:00:00Z");
+    private static final Instant T2 = Instant.parse("2026-10-01T09:30:00Z");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void refreshTimesSurviveARestart() throws IOException {
+        Path file = dir.resolve("refresh-times.tsv");
+        RefreshLog first = new RefreshLog(file);
+        first.record("7", T1);
+        first.record("8", T1);
+        first.record("7", T2);
+        // No close: the appended lines alone must carry over, as after a crash
+
+        try (RefreshLog second = new RefreshLog(file)) {
+            assertEquals(Map.of("7", T2, "8", T1), second.snapshot());
+        }
+    }
+
+    @Test
+    void closeCompactsToOneLinePerProduct() throws IOException {
+        Path file = dir.resolve("refresh-times.tsv");
+        try (RefreshLog log = new RefreshLog(file)) {
+            for (int i = 0; i < 50; i++) log.record("7", T1.plusSeconds(i));
+            log.record("8", T2);
+        }
+        assertEquals(2, Files.readAllLines(file).size());
+
+        try (RefreshLog log = new RefreshLog(file)) {
+            assertEquals(Map.of("7", T1.plusSeconds(49), "8", T2), log.snapshot());
+        }
+    }
+
+    @Test
+    void refreshesOfAnotherProcessAreSeenAndKeptByCompaction() throws IOException {
+        Path file = dir.resolve("refresh-times.tsv");
+        RefreshLog a = new RefreshLog(file);
+        RefreshLog b = new RefreshLog(file);
+        a.record("7", T1);
+        b.record("8", T2);
+        assertEquals(Map.of("7", T1, "8", T2), a.snapshot());
+
+        // a compacts; b appends to the new file and still reads it correctly
+        a.close();
+        b.record("9", T1);
+        assertEquals(Map.of("7", T1, "8", T2, "9", T1), b.snapshot());
+        b.close();
+
+        try (RefreshLog log = new RefreshLog(file)) {
+            assertEquals(Map.of("7", T1, "8", T2, "9", T1), log.snapshot());
+        }
+    }
+
+    @Test
+    void tornLineIsIgnored() throws IOException {
+        Path file = dir.resolve("refresh-times.tsv");
+        Files.write(file, ("7\t" + T1.toEpochMilli() + "\n8\t17").getBytes(), StandardOpenOption.CREATE);
+
+        try (RefreshLog log = new RefreshLog(file)) {
+            assertEquals(Map.of("7", T1), log.snapshot());
+        }
+    }
+}
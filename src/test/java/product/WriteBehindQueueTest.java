@@ -0,0 +1,226 @@
+package product;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sends queued writes to a local stand-in for the {@code /products} API and
+ * checks what reaches it: retries after retryable statuses, the existence
+ * check before a resent SAVE, the dead letter for rejected writes, and the
+ * drain on close.
+ */
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path dir;
+
+    private ApiStub api;
+    private Path file;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        api = new ApiStub();
+        ProductIdentifier.setApiBase(api.baseUrl());
+        file = dir.resolve("writes.journal");
+    }
+
+    @AfterEach
+    void stopApi() {
+        api.stop();
+    }
+
+    @Test
+    void closeSendsQueuedWrites() throws IOException {
+        WriteBehindQueue queue = new WriteBehindQueue(new WriteJournal(file, 4096, false), 8);
+        queue.submit(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+        queue.submit(ProductWrite.update("7", "Rye Bread", 2.49, "u"));
+        queue.close();
+
+        assertEquals(List.of("POST /products", "PUT /products/7"), api.requests());
+        assertEquals(0, reopenedPendingCount());
+    }
+
+    @Test
+    void retryableStatusIsRetriedUntilAccepted() throws IOException {
+        api.failNext(503, 503);
+        WriteBehindQueue queue = new WriteBehindQueue(new WriteJournal(file, 4096, false), 8);
+        queue.submit(ProductWrite.update("7", "Rye Bread", 2.49, "u"));
+        queue.submit(ProductWrite.update("8", "Cold Brew", 3.10, "u"));
+        assertTrue(waitForDrain(queue));
+        queue.close(Duration.ZERO);
+
+        // The first write is retried in place; the second is never sent ahead of it
+        assertEquals(List.of("PUT /products/7", "PUT /products/7", "PUT /products/7", "PUT /products/8"),
+                api.requests());
+        assertEquals(0, reopenedPendingCount());
+    }
+
+    @Test
+    void retriedSaveIsSkippedIfTheFailedAttemptWasStored() throws IOException {
+        // The server stores the product, then answers 503, as a proxy timeout would
+        api.storeThenFailNext(503);
+        WriteBehindQueue queue = new WriteBehindQueue(new WriteJournal(file, 4096, false), 8);
+        queue.submit(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+        assertTrue(waitForDrain(queue));
+        queue.close(Duration.ZERO);
+
+        assertEquals(List.of("POST /products", "GET /products?name=Oat+Milk+1L"), api.requests());
+        assertEquals(0, reopenedPendingCount());
+    }
+
+    @Test
+    void replayedSaveIsCheckedBeforeSending() throws IOException {
+        // A previous run stored the first product but crashed before the ack
+        try (WriteJournal journal = new WriteJournal(file, 4096, false)) {
+            journal.append(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+            journal.append(ProductWrite.save("Rye Bread", 2.49, "u"));
+        }
+        api.stored.add("Oat Milk 1L");
+
+        WriteBehindQueue queue = new WriteBehindQueue(new WriteJournal(file, 4096, false), 8);
+        queue.close();
+
+        assertEquals(List.of("GET /products?name=Oat+Milk+1L", "GET /products?name=Rye+Bread", "POST /products"),
+                api.requests());
+        assertEquals(0, reopenedPendingCount());
+    }
+
+    @Test
+    void rejectedWriteIsKeptAndNotRetried() throws IOException {
+        api.failNext(400);
+        WriteJournal journal = new WriteJournal(file, 4096, false);
+        WriteBehindQueue queue = new WriteBehindQueue(journal, 8);
+        queue.submit(ProductWrite.save("Oat Milk 1L", -1, "u"));
+        queue.submit(ProductWrite.save("Rye Bread", 2.49, "u"));
+        queue.close();
+
+        assertEquals(List.of("POST /products", "POST /products"), api.requests());
+        assertEquals(1, journal.rejectedCount());
+        assertEquals(0, reopenedPendingCount());
+    }
+
+    @Test
+    void closeGivesUpEarlyWhileTheApiIsFailing() throws IOException {
+        api.failNext(503, 503, 503, 503, 503, 503, 503, 503);
+        WriteBehindQueue queue = new WriteBehindQueue(new WriteJournal(file, 4096, false), 8);
+        queue.submit(ProductWrite.update("7", "Rye Bread", 2.49, "u"));
+
+        long start = System.nanoTime();
+        queue.close(Duration.ofSeconds(30));
+        Duration took = Duration.ofNanos(System.nanoTime() - start);
+
+        assertTrue(took.compareTo(Duration.ofSeconds(5)) < 0, "close took " + took);
+        assertEquals(1, reopenedPendingCount());
+    }
+
+    private static boolean waitForDrain(WriteBehindQueue queue) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (queue.pending() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return queue.pending() == 0;
+    }
+
+    private int reopenedPendingCount() throws IOException {
+        try (WriteJournal journal = new WriteJournal(file, 4096, false)) {
+            return journal.pendingCount();
+        }
+    }
+
+    /** Minimal {@code /products} API: records requests, answers queued failure statuses first */
+    private static class ApiStub {
+
+        final Set<String> stored = ConcurrentHashMap.newKeySet();
+        private final List<String> requests = new ArrayList<>();
+        private final Deque<Integer> failures = new ArrayDeque<>();
+        private boolean storeBeforeFailing;
+        private final HttpServer server;
+
+        ApiStub() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/products", this::handle);
+            server.start();
+        }
+
+        String baseUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        synchronized void failNext(Integer... statuses) {
+            failures.addAll(List.of(statuses));
+        }
+
+        synchronized void storeThenFailNext(int status) {
+            storeBeforeFailing = true;
+            failures.add(status);
+        }
+
+        synchronized List<String> requests() {
+            return new ArrayList<>(requests);
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            String query = exchange.getRequestURI().getRawQuery();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            int status;
+            String response = "";
+            synchronized (this) {
+                requests.add(method + " " + exchange.getRequestURI().getRawPath() + (query != null ? "?" + query : ""));
+                Integer failure = method.equals("GET") ? null : failures.poll();
+                if (failure != null && storeBeforeFailing) storeTitle(body);
+                if (failure != null) {
+                    status = failure;
+                } else if (method.equals("GET")) {
+                    String name = URLDecoder.decode(query.substring("name=".length()), StandardCharsets.UTF_8);
+                    status = 200;
+                    response = stored.contains(name) ? "[{\"title\":\"" + name + "\"}]" : "[]";
+                } else {
+                    if (method.equals("POST")) storeTitle(body);
+                    status = 200;
+                    response = "{}";
+                }
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private void storeTitle(String json) {
+            int start = json.indexOf("\"title\":\"") + "\"title\":\"".length();
+            stored.add(json.substring(start, json.indexOf('"', start)));
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package product;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recovery, compaction and locking of {@link WriteJournal}. Crashes are
+ * simulated by editing the closed file: a torn append leaves a record cut
+ * short, a bad sector or partial page write leaves one with a wrong CRC.
+ */
+class WriteJournalTest {
+
+    private static final int SMALL = 512;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void unacknowledgedWritesAreReplayedAfterReopen() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        long first, third;
+        try (WriteJournal journal = new WriteJournal(file, SMALL, true)) {
+            first = journal.append(ProductWrite.save("Oat Milk 1L", 1.99, "https://a.example/oat"));
+            long second = journal.append(ProductWrite.update("7", "Rye Bread", 2.49, "https://b.example/rye"));
+            third = journal.append(ProductWrite.save("Cold Brew", 3.10, "https://c.example/brew"));
+            journal.ack(second);
+        }
+
+        try (WriteJournal journal = new WriteJournal(file, SMALL, true)) {
+            Map<Long, ProductWrite> pending = journal.pending();
+            assertEquals(List.of(first, third), new ArrayList<>(pending.keySet()));
+            assertEquals("Oat Milk 1L", pending.get(first).title);
+            assertEquals(ProductWrite.Kind.SAVE, pending.get(third).kind);
+            assertEquals(3.10, pending.get(third).price);
+
+            // Sequence numbers continue past the recovered ones
+            assertTrue(journal.append(ProductWrite.save("Tea", 1.0, "u")) > third);
+        }
+    }
+
+    @Test
+    void truncatedTailRecordIsDropped() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            journal.append(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+            journal.append(ProductWrite.save("Rye Bread", 2.49, "u"));
+        }
+        List<Integer> records = recordOffsets(file);
+        // Cut the last record short, as a crash mid-append on a growing file would
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(records.get(1) + 12);
+        }
+
+        assertRecoversOnly(file, "Oat Milk 1L");
+    }
+
+    @Test
+    void tailRecordWithBadCrcIsDropped() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            journal.append(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+            journal.append(ProductWrite.save("Rye Bread", 2.49, "u"));
+        }
+        int last = recordOffsets(file).get(1);
+        flipByte(file, last + 20);
+
+        assertRecoversOnly(file, "Oat Milk 1L");
+    }
+
+    @Test
+    void corruptRecordEndsRecoveryEvenIfLaterRecordsAreValid() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            journal.append(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+            journal.append(ProductWrite.save("Rye Bread", 2.49, "u"));
+            journal.append(ProductWrite.save("Cold Brew", 3.10, "u"));
+        }
+        flipByte(file, recordOffsets(file).get(1) + 20);
+
+        assertRecoversOnly(file, "Oat Milk 1L");
+    }
+
+    @Test
+    void fileThatIsNotAJournalIsRefused() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        Files.write(file, "not a journal at all".getBytes());
+
+        assertThrows(IOException.class, () -> new WriteJournal(file, SMALL, false));
+        // The failed open must not keep the lock
+        Files.delete(file);
+        new WriteJournal(file, SMALL, false).close();
+    }
+
+    @Test
+    void acknowledgedWritesAreCompactedAwayWhenFull() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            long kept = journal.append(ProductWrite.save("Kept", 1.0, "u"));
+            // Several times the capacity in records, almost all acknowledged
+            for (int i = 0; i < 100; i++) {
+                journal.ack(journal.append(ProductWrite.save("Product " + i, i, "https://store.example/" + i)));
+            }
+            assertEquals(Map.of(kept, "Kept"), titles(journal.pending()));
+        }
+        assertEquals(SMALL, Files.size(file), "compaction alone made room, no growth needed");
+
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            assertEquals(List.of("Kept"), new ArrayList<>(titles(journal.pending()).values()));
+        }
+    }
+
+    @Test
+    void journalGrowsWhenPendingWritesDoNotFit() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        int count = 50;
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            for (int i = 0; i < count; i++) {
+                journal.append(ProductWrite.save("Product " + i, i, "https://store.example/" + i));
+            }
+            assertEquals(count, journal.pendingCount());
+        }
+        assertTrue(Files.size(file) > SMALL, "file grew to " + Files.size(file));
+        assertTrue(Files.notExists(dir.resolve("writes.journal.compact")));
+
+        // Reopening with the small default keeps the larger file and every write
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            List<String> titles = new ArrayList<>(titles(journal.pending()).values());
+            assertEquals(count, titles.size());
+            assertEquals("Product 0", titles.get(0));
+            assertEquals("Product " + (count - 1), titles.get(count - 1));
+        }
+    }
+
+    @Test
+    void rejectedWriteIsSetAsideAndNotReplayed() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            assertEquals(0, journal.rejectedCount());
+            long seq = journal.append(ProductWrite.save("Oat Milk 1L", -1, "u"));
+            journal.append(ProductWrite.save("Rye Bread", 2.49, "u"));
+            journal.reject(seq, "POST /products failed with status 400");
+            assertEquals(1, journal.rejectedCount());
+        }
+
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            assertEquals(List.of("Rye Bread"), new ArrayList<>(titles(journal.pending()).values()));
+            assertEquals(1, journal.rejectedCount());
+            String line = Files.readAllLines(journal.rejectedFile()).get(0);
+            assertTrue(line.contains("\"reason\":\"POST /products failed with status 400\""), line);
+            assertTrue(line.contains("\"title\":\"Oat Milk 1L\""), line);
+        }
+    }
+
+    @Test
+    void closedJournalRefusesWrites() throws IOException {
+        WriteJournal journal = new WriteJournal(dir.resolve("writes.journal"), SMALL, false);
+        long seq = journal.append(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+        journal.close();
+
+        assertThrows(IOException.class, () -> journal.append(ProductWrite.save("Rye Bread", 2.49, "u")));
+        assertThrows(IOException.class, () -> journal.ack(seq));
+    }
+
+    @Test
+    void secondJournalOnSameFileInThisProcessIsRefused() throws IOException {
+        Path file = dir.resolve("writes.journal");
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            journal.append(ProductWrite.save("Oat Milk 1L", 1.99, "u"));
+            IOException e = assertThrows(IOException.class, () -> new WriteJournal(file, SMALL, false));
+            assertTrue(e.getMessage().contains("already open"), e.getMessage());
+            // The refused open must not have released or replaced anything
+            journal.append(ProductWrite.save("Rye Bread", 2.49, "u"));
+        }
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            assertEquals(2, journal.pendingCount());
+        }
+    }
+
+    @Test
+    void journalLockedByAnotherProcessIsRefused() throws Exception {
+        Path file = dir.resolve("writes.journal");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process holder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LockHolder.class.getName(), file.toString())
+                .redirectErrorStream(true)
+                .start();
+        try {
+            BufferedReader out = new BufferedReader(new InputStreamReader(holder.getInputStream()));
+            assertEquals("locked", out.readLine());
+
+            IOException e = assertThrows(IOException.class, () -> new WriteJournal(file, SMALL, false));
+            assertTrue(e.getMessage().contains("another process"), e.getMessage());
+        } finally {
+            holder.getOutputStream().close();
+            assertTrue(holder.waitFor(10, TimeUnit.SECONDS));
+        }
+
+        // Once the other process has exited, the journal and its write are ours
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            assertEquals(List.of("From holder"), new ArrayList<>(titles(journal.pending()).values()));
+        }
+    }
+
+    /** Opens a journal in a separate JVM and keeps it open until stdin closes */
+    public static class LockHolder {
+
+        public static void main(String[] args) throws IOException {
+            try (WriteJournal journal = new WriteJournal(Paths.get(args[0]), SMALL, false)) {
+                journal.append(ProductWrite.save("From holder", 1.0, "u"));
+                System.out.println("locked");
+                System.out.flush();
+                while (System.in.read() >= 0) {
+                    // Wait for the test to close our stdin
+                }
+            }
+        }
+    }
+
+    private static void assertRecoversOnly(Path file, String title) throws IOException {
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            assertEquals(List.of(title), new ArrayList<>(titles(journal.pending()).values()));
+            // The journal is usable again and the bad record does not come back
+            journal.append(ProductWrite.save("After recovery", 4.0, "u"));
+        }
+        try (WriteJournal journal = new WriteJournal(file, SMALL, false)) {
+            assertEquals(List.of(title, "After recovery"), new ArrayList<>(titles(journal.pending()).values()));
+        }
+    }
+
+    private static Map<Long, String> titles(Map<Long, ProductWrite> pending) {
+        Map<Long, String> titles = new LinkedHashMap<>();
+        pending.forEach((seq, write) -> titles.put(seq, write.title));
+        return titles;
+    }
+
+    /** Offsets of the records in a closed journal file, following the length fields */
+    private static List<Integer> recordOffsets(Path file) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file));
+        List<Integer> offsets = new ArrayList<>();
+        int pos = 8;
+        while (pos + 4 <= b.limit() && b.getInt(pos) > 0) {
+            offsets.add(pos);
+            pos += 8 + b.getInt(pos);
+        }
+        return offsets;
+    }
+
+    private static void flipByte(Path file, int offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[offset] ^= 0x5A;
+        Files.write(file, bytes);
+    }
+}
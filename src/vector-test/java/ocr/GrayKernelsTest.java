@@ -0,0 +1,165 @@
+package ocr;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks every {@link VectorGrayKernels} method against {@link ScalarGrayKernels},
+ * which is the reference: outputs must be bit-identical, including array
+ * tails shorter than one vector and images too small for a convolution interior.
+ * Built and run only with {@code -Pvector}.
+ */
+class GrayKernelsTest {
+
+    /** Lengths below, at and just past multiples of the 4- and 8-lane vectors, plus larger odd sizes */
+    private static final int[] LENGTHS = {1, 2, 3, 4, 5, 7, 8, 9, 12, 15, 16, 17, 31, 32, 33, 63, 64, 65, 1001, 43621};
+
+    /** Image sides including the 1-2 px cases that have no interior */
+    private static final int[] SIDES = {1, 2, 3, 4, 5, 8, 9, 10, 17, 33, 67};
+
+    private static final GrayKernels scalar = new ScalarGrayKernels();
+    private static GrayKernels vector;
+
+    @BeforeAll
+    static void createVectorKernels() {
+        vector = new VectorGrayKernels();
+        assertTrue(vector.name().startsWith("vector-"), vector.name());
+    }
+
+    @Test
+    void rgbToGrayMatchesScalar() {
+        Random random = new Random(1);
+        for (int n : LENGTHS) {
+            int[] rgb = random.ints(n).toArray();
+            byte[] expected = new byte[n], actual = new byte[n];
+            scalar.rgbToGray(rgb, expected);
+            vector.rgbToGray(rgb, actual);
+            assertArrayEquals(expected, actual, "length " + n);
+        }
+    }
+
+    @Test
+    void minMaxMatchesScalar() {
+        Random random = new Random(2);
+        for (int n : LENGTHS) {
+            byte[] gray = noise(random, n);
+            assertArrayEquals(scalar.minMax(gray), vector.minMax(gray), "length " + n);
+
+            // Extremes only in the tail or only in the vector part
+            byte[] narrow = new byte[n];
+            Arrays.fill(narrow, (byte) 100);
+            narrow[n - 1] = (byte) 200;
+            narrow[0] = (byte) 3;
+            assertArrayEquals(scalar.minMax(narrow), vector.minMax(narrow), "length " + n);
+        }
+    }
+
+    @Test
+    void stretchMatchesScalar() {
+        Random random = new Random(3);
+        int[][] ranges = {{0, 255}, {0, 1}, {17, 18}, {40, 200}, {254, 255}, {90, 90}};
+        for (int n : LENGTHS) {
+            byte[] src = noise(random, n);
+            int[] measured = scalar.minMax(src);
+            for (int[] range : ranges) {
+                assertStretchMatches(src, range[0], range[1]);
+            }
+            assertStretchMatches(src, measured[0], measured[1]);
+        }
+    }
+
+    @Test
+    void stretchMatchesScalarForEveryRange() {
+        // Every pixel value, plus a tail past the last whole vector
+        byte[] src = new byte[259];
+        for (int i = 0; i < src.length; i++) src[i] = (byte) i;
+        for (int min = 0; min < 256; min++) {
+            for (int max = min; max < 256; max++) {
+                assertStretchMatches(src, min, max);
+            }
+        }
+    }
+
+    @Test
+    void thresholdMatchesScalar() {
+        Random random = new Random(4);
+        for (int n : LENGTHS) {
+            byte[] src = noise(random, n);
+            byte[] expected = new byte[n], actual = new byte[n];
+            scalar.threshold(src, expected);
+            vector.threshold(src, actual);
+            assertArrayEquals(expected, actual, "length " + n);
+        }
+    }
+
+    @Test
+    void blurMatchesScalar() {
+        Random random = new Random(5);
+        for (int width : SIDES) {
+            for (int height : SIDES) {
+                assertConvolveMatches(noise(random, width * height), width, height, GrayKernels.BLUR_WEIGHTS,
+                        GrayKernels.BLUR_MULTIPLIER, GrayKernels.BLUR_SHIFT);
+            }
+        }
+        assertConvolveMatches(noise(random, 241 * 181), 241, 181, GrayKernels.BLUR_WEIGHTS,
+                GrayKernels.BLUR_MULTIPLIER, GrayKernels.BLUR_SHIFT);
+    }
+
+    @Test
+    void sharpenMatchesScalar() {
+        Random random = new Random(6);
+        for (int width : SIDES) {
+            for (int height : SIDES) {
+                // Binary input, as after the threshold, drives the sum out of 0-255 both ways
+                byte[] binary = noise(random, width * height);
+                for (int i = 0; i < binary.length; i++) binary[i] = (byte) (binary[i] < 0 ? 255 : 0);
+                assertConvolveMatches(binary, width, height, GrayKernels.SHARPEN_WEIGHTS, 1, 0);
+                assertConvolveMatches(noise(random, width * height), width, height,
+                        GrayKernels.SHARPEN_WEIGHTS, 1, 0);
+            }
+        }
+        assertConvolveMatches(noise(random, 241 * 181), 241, 181, GrayKernels.SHARPEN_WEIGHTS, 1, 0);
+    }
+
+    @Test
+    void preprocessingChainMatchesScalar() {
+        BufferedImage img = ImagePreprocessorTest.label(641, 359);
+        byte[] expected = ImagePreprocessor.pixels(ImagePreprocessor.preprocessForOCR(img, scalar));
+        byte[] actual = ImagePreprocessor.pixels(ImagePreprocessor.preprocessForOCR(img, vector));
+        assertArrayEquals(expected, actual);
+    }
+
+    private static void assertStretchMatches(byte[] src, int min, int max) {
+        byte[] expected = new byte[src.length], actual = new byte[src.length];
+        scalar.stretch(src, expected, min, max);
+        vector.stretch(src, actual, min, max);
+        assertArrayEquals(expected, actual, "length " + src.length + ", range " + min + "-" + max);
+    }
+
+    private static void assertConvolveMatches(byte[] src, int width, int height, int[] weights,
+            int multiplier, int shift) {
+        byte[] expected = new byte[src.length], actual = new byte[src.length];
+        // The border must be cleared, not left as it was
+        Arrays.fill(expected, (byte) 0x55);
+        Arrays.fill(actual, (byte) 0x55);
+        scalar.convolve3x3(src, expected, width, height, weights, multiplier, shift);
+        vector.convolve3x3(src, actual, width, height, weights, multiplier, shift);
+        assertArrayEquals(expected, actual, width + "x" + height);
+        for (int x = 0; x < width; x++) {
+            assertTrue(actual[x] == 0 && actual[(height - 1) * width + x] == 0, width + "x" + height + " border");
+        }
+    }
+
+    private static byte[] noise(Random random, int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+}
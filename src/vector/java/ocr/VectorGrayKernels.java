@@ -0,0 +1,256 @@
+package ocr;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link GrayKernels} on the incubating Vector API ({@code jdk.incubator.vector}).
+ * <p>
+ * Pixels are loaded as byte lanes, widened to int lanes of the preferred
+ * vector size for arithmetic and narrowed back on store. Every operation
+ * mirrors {@link ScalarGrayKernels} step for step in integer arithmetic or
+ * the same table lookup, so results are bit-identical; array tails shorter
+ * than one byte vector are handled by the scalar code.
+ * <p>
+ * The smallest byte shape is 64 bits, so with 128-bit int vectors (ARM NEON,
+ * SSE) one byte vector holds the pixels of two int vectors. Each loop step
+ * then works on {@link #PARTS} int vectors: a part is widened from a byte
+ * load at its own offset, and the narrowed parts are packed into one byte
+ * vector before the store.
+ * <p>
+ * Only instantiated through {@link GrayKernels#best()}, which checks that the
+ * incubator module is present.
+ */
+class VectorGrayKernels implements GrayKernels {
+
+    /**
+     * Int lanes of the preferred shape, capped at 256 bits: JDK 17's C2 does
+     * not intrinsify the byte/int casts on 512-bit vectors and would box
+     * every lane operation.
+     */
+    private static final VectorSpecies<Integer> INT =
+            IntVector.SPECIES_PREFERRED.vectorBitSize() > 256 ? IntVector.SPECIES_256 : IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INT.length() * Byte.SIZE)));
+    /** Int vectors per byte vector: 1 for 256-bit int vectors, 2 for 128-bit */
+    private static final int PARTS = BYTE.length() / INT.length();
+    /**
+     * Moves byte lanes up by one part. {@code convertShape} with a non-zero
+     * part slices through a shuffle built per call, which JDK 17 boxes.
+     */
+    private static final VectorShuffle<Byte> NEXT_PART = VectorShuffle.iota(BYTE, BYTE.length() - INT.length(), 1, true);
+
+    /** Chunk after which per-lane int sums are folded into a long, well before they can overflow */
+    private static final int SUM_CHUNK = 1 << 16;
+
+    @Override
+    public void rgbToGray(int[] rgb, byte[] gray) {
+        int i = 0;
+        for (int bound = BYTE.loopBound(rgb.length); i < bound; i += BYTE.length()) {
+            ByteVector out = ByteVector.zero(BYTE);
+            for (int part = PARTS - 1; part >= 0; part--) {
+                out = pack(out, gray(IntVector.fromArray(INT, rgb, i + part * INT.length())));
+            }
+            out.intoArray(gray, i);
+        }
+        for (; i < rgb.length; i++) {
+            int p = rgb[i];
+            int r = (p >>> 16) & 0xFF, g = (p >>> 8) & 0xFF, b = p & 0xFF;
+            gray[i] = (byte) ((77 * r + 150 * g + 29 * b + 128) >>> 8);
+        }
+    }
+
+    private static IntVector gray(IntVector p) {
+        IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+        IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+        IntVector b = p.and(0xFF);
+        return r.mul(77).add(g.mul(150)).add(b.mul(29)).add(128).lanewise(VectorOperators.LSHR, 8);
+    }
+
+    @Override
+    public int[] minMax(byte[] gray) {
+        IntVector vmin = IntVector.broadcast(INT, 255);
+        IntVector vmax = IntVector.zero(INT);
+        int i = 0;
+        for (int bound = loopBound(gray.length); i < bound; i += BYTE.length()) {
+            for (int part = 0; part < PARTS; part++) {
+                IntVector p = load(gray, i + part * INT.length());
+                vmin = vmin.min(p);
+                vmax = vmax.max(p);
+            }
+        }
+        int min = vmin.reduceLanes(VectorOperators.MIN);
+        int max = vmax.reduceLanes(VectorOperators.MAX);
+        for (; i < gray.length; i++) {
+            int p = gray[i] & 0xFF;
+            if (p < min) min = p;
+            if (p > max) max = p;
+        }
+        return new int[]{min, max};
+    }
+
+    @Override
+    public void stretch(byte[] src, byte[] dst, int min, int max) {
+        if (max == min) {
+            System.arraycopy(src, 0, dst, 0, src.length);
+            return;
+        }
+        int[] table = GrayKernels.stretchTable(min, max);
+        // Gather indices must come from an int array, so each part goes through this one
+        int[] levels = new int[INT.length()];
+        int i = 0;
+        for (int bound = loopBound(src.length); i < bound; i += BYTE.length()) {
+            ByteVector out = ByteVector.zero(BYTE);
+            for (int part = PARTS - 1; part >= 0; part--) {
+                load(src, i + part * INT.length()).intoArray(levels, 0);
+                out = pack(out, IntVector.fromArray(INT, table, 0, levels, 0));
+            }
+            out.intoArray(dst, i);
+        }
+        for (; i < src.length; i++) {
+            dst[i] = (byte) table[src[i] & 0xFF];
+        }
+    }
+
+    @Override
+    public void threshold(byte[] src, byte[] dst) {
+        long sum = 0;
+        int i = 0;
+        int bound = loopBound(src.length);
+        while (i < bound) {
+            IntVector acc = IntVector.zero(INT);
+            int chunkEnd = Math.min(bound, i + SUM_CHUNK);
+            for (; i < chunkEnd; i += BYTE.length()) {
+                for (int part = 0; part < PARTS; part++) {
+                    acc = acc.add(load(src, i + part * INT.length()));
+                }
+            }
+            sum += acc.reduceLanesToLong(VectorOperators.ADD);
+        }
+        for (; i < src.length; i++) sum += src[i] & 0xFF;
+        int mean = (int) (sum / src.length);
+
+        IntVector white = IntVector.broadcast(INT, 255);
+        IntVector black = IntVector.zero(INT);
+        i = 0;
+        for (; i < bound; i += BYTE.length()) {
+            ByteVector out = ByteVector.zero(BYTE);
+            for (int part = PARTS - 1; part >= 0; part--) {
+                IntVector p = load(src, i + part * INT.length());
+                out = pack(out, black.blend(white, p.compare(VectorOperators.GT, mean)));
+            }
+            out.intoArray(dst, i);
+        }
+        for (; i < src.length; i++) {
+            dst[i] = (byte) ((src[i] & 0xFF) > mean ? 255 : 0);
+        }
+    }
+
+    @Override
+    public void convolve3x3(byte[] src, byte[] dst, int width, int height, int[] weights, int multiplier, int shift) {
+        ScalarGrayKernels.clearBorder(dst, width, height);
+        // Widen once so each tap is a single int load instead of load, widen and mask;
+        // with nine taps per vector the byte path exceeds C2's inlining budget and boxes
+        int[] p = new int[src.length];
+        widen(src, p);
+        int[] row = new int[width];
+        for (int y = 1; y < height - 1; y++) {
+            convolveRow(p, src, row, width, y, weights, multiplier, shift);
+            // Narrowing in a separate pass keeps the taps loop within the node budget on 128-bit vectors
+            narrow(row, 1, dst, y * width + 1, width - 2);
+        }
+    }
+
+    /** Convolves the interior pixels of row {@code y} into {@code out[1 .. width - 2]} */
+    private static void convolveRow(int[] p, byte[] src, int[] out, int width, int y, int[] weights,
+            int multiplier, int shift) {
+        int w0 = weights[0], w1 = weights[1], w2 = weights[2];
+        int w3 = weights[3], w4 = weights[4], w5 = weights[5];
+        int w6 = weights[6], w7 = weights[7], w8 = weights[8];
+        // Shift by a lane vector: C2 only intrinsifies scalar shift counts that are compile-time constants
+        IntVector shiftBy = IntVector.broadcast(INT, shift);
+        int lanes = INT.length();
+        int x = 1;
+        // The right-hand taps read up to pixel x + lanes, which must stay inside the row
+        for (; x + lanes <= width - 1; x += lanes) {
+            int above = (y - 1) * width + x, i = y * width + x, below = (y + 1) * width + x;
+            IntVector sum = IntVector.fromArray(INT, p, above - 1).mul(w0)
+                    .add(IntVector.fromArray(INT, p, above).mul(w1))
+                    .add(IntVector.fromArray(INT, p, above + 1).mul(w2))
+                    .add(IntVector.fromArray(INT, p, i - 1).mul(w3))
+                    .add(IntVector.fromArray(INT, p, i).mul(w4))
+                    .add(IntVector.fromArray(INT, p, i + 1).mul(w5))
+                    .add(IntVector.fromArray(INT, p, below - 1).mul(w6))
+                    .add(IntVector.fromArray(INT, p, below).mul(w7))
+                    .add(IntVector.fromArray(INT, p, below + 1).mul(w8));
+            IntVector v = sum.mul(multiplier).lanewise(VectorOperators.ASHR, shiftBy);
+            v.max(0).min(255).intoArray(out, x);
+        }
+        for (; x < width - 1; x++) {
+            out[x] = ScalarGrayKernels.convolveAt(src, width, x, y, weights, multiplier, shift);
+        }
+    }
+
+    /** Copies pixels into an int array as unsigned values */
+    private static void widen(byte[] src, int[] dst) {
+        int i = 0;
+        for (int bound = loopBound(src.length); i < bound; i += BYTE.length()) {
+            for (int part = 0; part < PARTS; part++) {
+                load(src, i + part * INT.length()).intoArray(dst, i + part * INT.length());
+            }
+        }
+        for (; i < src.length; i++) {
+            dst[i] = src[i] & 0xFF;
+        }
+    }
+
+    /** Stores int values holding 0-255 as bytes */
+    private static void narrow(int[] src, int srcPos, byte[] dst, int dstPos, int length) {
+        int i = 0;
+        for (int bound = BYTE.loopBound(length); i < bound; i += BYTE.length()) {
+            ByteVector out = ByteVector.zero(BYTE);
+            for (int part = PARTS - 1; part >= 0; part--) {
+                out = pack(out, IntVector.fromArray(INT, src, srcPos + i + part * INT.length()));
+            }
+            out.intoArray(dst, dstPos + i);
+        }
+        for (; i < length; i++) {
+            dst[dstPos + i] = (byte) src[srcPos + i];
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + INT.vectorBitSize();
+    }
+
+    /**
+     * Largest multiple of the byte vector length at which a loop over
+     * {@link #PARTS} loads must stop: the last part's load reads a whole byte vector.
+     */
+    private static int loopBound(int length) {
+        return BYTE.loopBound(Math.max(0, length - (PARTS - 1) * INT.length()));
+    }
+
+    /** Loads one int vector of pixels as unsigned int lanes; reads a whole byte vector */
+    private static IntVector load(byte[] a, int i) {
+        return ((IntVector) ByteVector.fromArray(BYTE, a, i).convertShape(VectorOperators.B2I, INT, 0)).and(0xFF);
+    }
+
+    /** Narrows int lanes holding 0-255 into the low byte lanes; the other lanes are zero */
+    private static ByteVector narrow(IntVector v) {
+        return (ByteVector) v.convertShape(VectorOperators.I2B, BYTE, 0);
+    }
+
+    /**
+     * Moves the parts packed so far up by one part and narrows {@code v} into
+     * the lowest. Parts are packed from the highest down, starting from zero.
+     */
+    private static ByteVector pack(ByteVector packed, IntVector v) {
+        return PARTS == 1 ? narrow(v) : packed.rearrange(NEXT_PART).or(narrow(v));
+    }
+}